@@ -0,0 +1,12 @@
+#!/bin/bash
+# Usage: ./run_benchmarks.bash [JMH options, e.g. a benchmark regex like InterpreterBenchmark or -p workload=loops]
+# Results are written as JSON to results/, one file per run, to compare them between versions.
+set -e
+
+cd "$(dirname "$0")"
+
+(cd .. && mvn -B -q install -DskipTests)
+mvn -B -q package
+
+mkdir -p results
+java -jar target/benchmarks.jar -rf json -rff "results/jmh-$(date +%Y%m%d-%H%M%S).json" "$@"
@@ -0,0 +1,48 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Recursive fib, nearly nothing but calls; run with -prof gc to see the allocation per call (gc.alloc.rate.norm)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CallBenchmark {
+
+    private static final String SOURCE = """
+        fun fib(n) {
+          if (n < 2) return n;
+          return fib(n - 1) + fib(n - 2);
+        }
+        var result = fib(%d);
+        """;
+
+    @Param({"25"})
+    public int n;
+
+    @Param({"tree", "vm"})
+    public String engine;
+
+    private List<Stmt> statements;
+
+    @Setup
+    public void setup() {
+        statements = Workloads.resolved(SOURCE.formatted(n));
+    }
+
+    @Benchmark
+    public Interpreter fib() {
+        var interpreter = new Interpreter();
+        if (engine.equals("vm")) {
+            new VM(interpreter).interpret(statements);
+        } else {
+            interpreter.interpret(statements);
+        }
+        return interpreter;
+    }
+}
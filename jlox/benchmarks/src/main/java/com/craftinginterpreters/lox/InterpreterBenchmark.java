@@ -0,0 +1,43 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InterpreterBenchmark {
+
+    @Param({Workloads.RECURSION, Workloads.LOOPS, Workloads.CLASSES, Workloads.LISTS, Workloads.STRINGS})
+    public String workload;
+
+    @Param({"10000"})
+    public int iterations;
+
+    @Param({"tree", "vm"})
+    public String engine;
+
+    private List<Stmt> statements;
+
+    @Setup
+    public void setup() {
+        statements = Workloads.resolved(Workloads.source(workload, 1, iterations));
+    }
+
+    // Fresh Interpreter every time, so globals of previous runs do not pile up
+    @Benchmark
+    public Interpreter interpret() {
+        var interpreter = new Interpreter();
+        if (engine.equals("vm")) {
+            new VM(interpreter).interpret(statements);
+        } else {
+            interpreter.interpret(statements);
+        }
+        return interpreter;
+    }
+}
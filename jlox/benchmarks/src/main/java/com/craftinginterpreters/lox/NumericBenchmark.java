@@ -0,0 +1,50 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Arithmetic and comparisons in a tight loop; run with -prof gc to see the allocation rate per operation
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NumericBenchmark {
+
+    private static final String SOURCE = """
+        var sum = 0;
+        for (var i = 0; i < %d; i = i + 1) {
+          var x = (i * 2 - 1) / 3;
+          if (x * x - i >= 1.5 * i) {
+            sum = sum + (x - i) * 0.5;
+          }
+        }
+        """;
+
+    @Param({"100000"})
+    public int iterations;
+
+    @Param({"tree", "vm"})
+    public String engine;
+
+    private List<Stmt> statements;
+
+    @Setup
+    public void setup() {
+        statements = Workloads.resolved(SOURCE.formatted(iterations));
+    }
+
+    @Benchmark
+    public Interpreter numericLoop() {
+        var interpreter = new Interpreter();
+        if (engine.equals("vm")) {
+            new VM(interpreter).interpret(statements);
+        } else {
+            interpreter.interpret(statements);
+        }
+        return interpreter;
+    }
+}
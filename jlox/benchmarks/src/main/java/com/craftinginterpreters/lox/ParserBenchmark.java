@@ -0,0 +1,41 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+    @Param({Workloads.RECURSION, Workloads.LOOPS, Workloads.CLASSES, Workloads.LISTS, Workloads.STRINGS})
+    public String workload;
+
+    @Param({"200"})
+    public int copies;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Workloads.source(workload, copies, 100);
+    }
+
+    // Includes scanning, since the Parser pulls tokens from the Scanner as it goes
+    @Benchmark
+    public List<Stmt> parse() {
+        return new Parser(new Scanner(source, Workloads.ERRORS), Workloads.ERRORS).parse();
+    }
+
+    // Scans sequentially, then parses chunks of top-level declarations on the common pool
+    @Benchmark
+    public List<Stmt> parseParallel() {
+        return new ParallelParser(ForkJoinPool.commonPool(), Workloads.ERRORS).parse(source);
+    }
+}
@@ -0,0 +1,35 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ResolverBenchmark {
+
+    @Param({Workloads.RECURSION, Workloads.LOOPS, Workloads.CLASSES, Workloads.LISTS, Workloads.STRINGS})
+    public String workload;
+
+    @Param({"200"})
+    public int copies;
+
+    private List<Stmt> statements;
+
+    @Setup
+    public void setup() {
+        statements = Workloads.parsed(Workloads.source(workload, copies, 100));
+    }
+
+    // Resolving the same statements again just overwrites previous results
+    @Benchmark
+    public List<Stmt> resolve() {
+        new Resolver(Workloads.ERRORS).resolve(statements);
+        return statements;
+    }
+}
@@ -0,0 +1,40 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScannerBenchmark {
+
+    @Param({Workloads.RECURSION, Workloads.LOOPS, Workloads.CLASSES, Workloads.LISTS, Workloads.STRINGS})
+    public String workload;
+
+    @Param({"200"})
+    public int copies;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Workloads.source(workload, copies, 100);
+    }
+
+    // Scans into a TokenBuffer like the Parser does, without creating Token objects
+    @Benchmark
+    public int scan() {
+        var scanner = new Scanner(source, Workloads.ERRORS);
+        var tokens = new TokenBuffer();
+        var count = 0;
+        do {
+            scanner.scan(tokens);
+            count += tokens.size();
+        } while (tokens.type(tokens.size() - 1) != TokenType.EOF);
+        return count;
+    }
+}
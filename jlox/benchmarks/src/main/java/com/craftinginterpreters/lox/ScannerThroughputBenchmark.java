@@ -0,0 +1,51 @@
+package com.craftinginterpreters.lox;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+// Scanner throughput in MB/s (the megabytes counter) on a large source mixing all the workloads
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScannerThroughputBenchmark {
+
+    @Param({"1000"})
+    public int copies;
+
+    private String source;
+    private double sourceMegabytes;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Counters {
+        public double megabytes;
+    }
+
+    @Setup
+    public void setup() {
+        source = Stream.of(Workloads.RECURSION, Workloads.LOOPS, Workloads.CLASSES, Workloads.LISTS, Workloads.STRINGS)
+            .map(workload -> "// %s workload\n%s".formatted(workload, Workloads.source(workload, copies, 100)))
+            .collect(Collectors.joining("\n"));
+        sourceMegabytes = source.getBytes(StandardCharsets.UTF_8).length / 1_000_000.0;
+    }
+
+    @Benchmark
+    public int scan(Counters counters) {
+        var scanner = new Scanner(source, Workloads.ERRORS);
+        var tokens = new TokenBuffer();
+        var count = 0;
+        do {
+            scanner.scan(tokens);
+            count += tokens.size();
+        } while (tokens.type(tokens.size() - 1) != TokenType.EOF);
+        counters.megabytes += sourceMegabytes;
+        return count;
+    }
+}
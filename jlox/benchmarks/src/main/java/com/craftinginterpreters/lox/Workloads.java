@@ -0,0 +1,110 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+// Generated Lox programs for benchmarks.
+// Every workload is a snippet repeated copies times (with unique names), each doing work proportional to iterations.
+final class Workloads {
+
+    static final String RECURSION = "recursion";
+    static final String LOOPS = "loops";
+    static final String CLASSES = "classes";
+    static final String LISTS = "lists";
+    static final String STRINGS = "strings";
+
+    static final ErrorReporter ERRORS = ErrorReporter.printingTo(System.err);
+
+    private Workloads() {
+    }
+
+    static String source(String workload, int copies, int iterations) {
+        var source = new StringBuilder();
+        for (var i = 0; i < copies; i++) {
+            source.append(snippet(workload, i, iterations)).append('\n');
+        }
+        return source.toString();
+    }
+
+    static List<Stmt> resolved(String source) {
+        var statements = parsed(source);
+        new Resolver(ERRORS).resolve(statements);
+        return new Optimizer().optimize(statements);
+    }
+
+    static List<Stmt> parsed(String source) {
+        return new Parser(new Scanner(source, ERRORS), ERRORS).parse();
+    }
+
+    private static String snippet(String workload, int id, int iterations) {
+        return switch (workload) {
+            case RECURSION -> """
+                fun fib%1$d(n) {
+                  if (n < 2) return n;
+                  return fib%1$d(n - 1) + fib%1$d(n - 2);
+                }
+                var recursion%1$d = fib%1$d(%2$d);
+                """.formatted(id, recursionDepth(iterations));
+            case LOOPS -> """
+                var loops%1$d = 0;
+                for (var i = 0; i < %2$d; i = i + 1) {
+                  var j = 0;
+                  while (j < 10) {
+                    loops%1$d = loops%1$d + i * j - (j / 2);
+                    j = j + 1;
+                  }
+                }
+                """.formatted(id, iterations);
+            case CLASSES -> """
+                class Point%1$d {
+                  init(x, y) {
+                    this.x = x;
+                    this.y = y;
+                  }
+                  add(other) {
+                    return Point%1$d(this.x + other.x, this.y + other.y);
+                  }
+                  scale(factor) {
+                    this.x = this.x * factor;
+                    this.y = this.y * factor;
+                    return this;
+                  }
+                  lengthSquared() {
+                    return this.x * this.x + this.y * this.y;
+                  }
+                }
+                var point%1$d = Point%1$d(0, 0);
+                for (var i = 0; i < %2$d; i = i + 1) {
+                  point%1$d = point%1$d.add(Point%1$d(1, 2)).scale(1);
+                }
+                var classes%1$d = point%1$d.lengthSquared();
+                """.formatted(id, iterations);
+            case LISTS -> """
+                var list%1$d = [];
+                for (var i = 0; i < %2$d; i = i + 1) {
+                  add(list%1$d, i);
+                }
+                var lists%1$d = 0;
+                for (var i = 0; i < size(list%1$d); i = i + 1) {
+                  lists%1$d = lists%1$d + get(list%1$d, i);
+                  set(list%1$d, i, lists%1$d);
+                }
+                """.formatted(id, iterations);
+            case STRINGS -> """
+                var strings%1$d = "";
+                for (var i = 0; i < %2$d; i = i + 1) {
+                  strings%1$d = strings%1$d + "item-" + i + ";";
+                }
+                """.formatted(id, iterations / 10);
+            default -> throw new IllegalArgumentException("Unknown workload: " + workload);
+        };
+    }
+
+    // fib is exponential, so iterations are mapped to a comparable amount of calls
+    private static int recursionDepth(int iterations) {
+        var depth = 1;
+        while (Math.pow(1.618, depth) < iterations * 10) {
+            depth++;
+        }
+        return depth;
+    }
+}
@@ -0,0 +1,175 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.AstWriter.*;
+
+// Reads back statements written by AstWriter, resolved as they were when written.
+class AstReader {
+
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final ByteBuffer in;
+    private String[] strings;
+
+    AstReader(ByteBuffer in) {
+        this.in = in;
+    }
+
+    List<Stmt> read() {
+        if (in.getInt() != MAGIC || in.getInt() != FORMAT_VERSION) {
+            throw new IllegalArgumentException("Not a compiled script of the current format");
+        }
+        strings = new String[in.getInt()];
+        for (var i = 0; i < strings.length; i++) {
+            var utf8 = new byte[in.getInt()];
+            in.get(utf8);
+            strings[i] = new String(utf8, StandardCharsets.UTF_8);
+        }
+        return readStatements();
+    }
+
+    private List<Stmt> readStatements() {
+        var count = in.getInt();
+        var statements = new ArrayList<Stmt>(count);
+        for (var i = 0; i < count; i++) {
+            statements.add(readStmt());
+        }
+        return statements;
+    }
+
+    private List<Expr> readExpressions() {
+        var count = in.getInt();
+        var expressions = new ArrayList<Expr>(count);
+        for (var i = 0; i < count; i++) {
+            expressions.add(readExpr());
+        }
+        return expressions;
+    }
+
+    private List<Token> readTokens() {
+        var count = in.getInt();
+        var tokens = new ArrayList<Token>(count);
+        for (var i = 0; i < count; i++) {
+            tokens.add(readToken());
+        }
+        return tokens;
+    }
+
+    private int[] readInts() {
+        var values = new int[in.getInt()];
+        for (var i = 0; i < values.length; i++) {
+            values[i] = in.getInt();
+        }
+        return values;
+    }
+
+    private Token readToken() {
+        var type = TOKEN_TYPES[in.get()];
+        var lexeme = strings[in.getInt()];
+        var literal = readValue();
+        return new Token(type, lexeme, literal, in.getInt());
+    }
+
+    private Object readValue() {
+        return switch (in.get()) {
+            case NIL_VALUE -> null;
+            case TRUE_VALUE -> true;
+            case FALSE_VALUE -> false;
+            case NUMBER_VALUE -> in.getDouble();
+            case STRING_VALUE -> strings[in.getInt()];
+            default -> throw new IllegalArgumentException("Unknown value tag");
+        };
+    }
+
+    private Expr readExpr() {
+        var tag = in.get();
+        return switch (tag) {
+            case NULL -> null;
+            case ASSIGNMENT -> {
+                var expr = new Expr.Assignment(readToken(), readExpr());
+                expr.depth = in.getInt();
+                expr.slot = in.getInt();
+                yield expr;
+            }
+            case BINARY -> new Expr.Binary(readExpr(), readToken(), readExpr());
+            case CALL -> {
+                var expr = new Expr.Call(readExpr(), readToken(), readExpressions());
+                expr.tailCall = in.get() == 1;
+                yield expr;
+            }
+            case GET -> new Expr.Get(readExpr(), readToken());
+            case TERNARY -> new Expr.Ternary(readExpr(), readExpr(), readExpr(), in.getInt());
+            case GROUPING -> new Expr.Grouping(readExpr());
+            case LITERAL -> new Expr.Literal(readValue());
+            case LOGICAL -> new Expr.Logical(readExpr(), readToken(), readExpr());
+            case SET -> new Expr.Set(readExpr(), readToken(), readExpr());
+            case THIS -> {
+                var expr = new Expr.This(readToken());
+                expr.depth = in.getInt();
+                expr.slot = in.getInt();
+                yield expr;
+            }
+            case UNARY -> new Expr.Unary(readToken(), readExpr());
+            case VARIABLE -> {
+                var expr = new Expr.Variable(readToken());
+                expr.depth = in.getInt();
+                expr.slot = in.getInt();
+                yield expr;
+            }
+            case FUNCTION_EXPR -> {
+                var expr = new Expr.Function(readTokens(), readStatements());
+                expr.localCount = in.getInt();
+                expr.captures = readInts();
+                yield expr;
+            }
+            case LIST -> new Expr.LoxList(readExpressions());
+            default -> throw new IllegalArgumentException("Unknown expression tag: " + tag);
+        };
+    }
+
+    private Stmt readStmt() {
+        var tag = in.get();
+        return switch (tag) {
+            case NULL -> null;
+            case BLOCK -> {
+                var stmt = new Stmt.Block(readStatements());
+                stmt.localCount = in.getInt();
+                stmt.flattened = in.get() == 1;
+                // Not stored, since it only depends on the statements
+                CountedLoop.recognizeAll(stmt.statements);
+                yield stmt;
+            }
+            case CLASS -> {
+                var name = readToken();
+                var methods = readStatements().stream().map(Stmt.Function.class::cast).toList();
+                var stmt = new Stmt.Class(name, methods);
+                stmt.slot = in.getInt();
+                yield stmt;
+            }
+            case EXPRESSION -> new Stmt.Expression(readExpr());
+            case FUNCTION -> {
+                var stmt = new Stmt.Function(readToken(), readTokens(), readStatements());
+                stmt.slot = in.getInt();
+                stmt.localCount = in.getInt();
+                stmt.captures = readInts();
+                yield stmt;
+            }
+            case IF -> new Stmt.If(readExpr(), readStmt(), readStmt());
+            case PRINT -> new Stmt.Print(readExpr());
+            case RETURN -> new Stmt.Return(readToken(), readExpr());
+            case VARIABLE_STMT -> {
+                var stmt = new Stmt.Variable(readToken(), readExpr());
+                stmt.slot = in.getInt();
+                yield stmt;
+            }
+            case WHILE -> new Stmt.While(readExpr(), readStmt(), readStmt());
+            case BREAK -> new Stmt.Break(null, readToken());
+            case CONTINUE -> new Stmt.Continue(null, readToken());
+            default -> throw new IllegalArgumentException("Unknown statement tag: " + tag);
+        };
+    }
+}
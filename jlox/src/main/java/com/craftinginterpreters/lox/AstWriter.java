@@ -0,0 +1,372 @@
+package com.craftinginterpreters.lox;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Binary form of resolved statements, read back by AstReader.
+// Layout: magic, format version, strings table, then the nodes in pre-order, each starting with its tag.
+// Resolution results (depths, slots, locals counts, captures, flattened blocks) are stored too, so loaded statements don't need the Resolver.
+class AstWriter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    static final int MAGIC = 0x4A4C4F58;
+    // Bump on any change of the layout, of the nodes or of what the Resolver stores in them,
+    // since it is part of the ScriptCache key
+    static final int FORMAT_VERSION = 5;
+
+    // Node tags, 0 stands for a missing (null) node
+    static final byte NULL = 0;
+    static final byte ASSIGNMENT = 1;
+    static final byte BINARY = 2;
+    static final byte CALL = 3;
+    static final byte GET = 4;
+    static final byte TERNARY = 5;
+    static final byte GROUPING = 6;
+    static final byte LITERAL = 7;
+    static final byte LOGICAL = 8;
+    static final byte SET = 9;
+    static final byte THIS = 10;
+    static final byte UNARY = 11;
+    static final byte VARIABLE = 12;
+    static final byte FUNCTION_EXPR = 13;
+    static final byte LIST = 14;
+    static final byte BLOCK = 15;
+    static final byte CLASS = 16;
+    static final byte EXPRESSION = 17;
+    static final byte FUNCTION = 18;
+    static final byte IF = 19;
+    static final byte PRINT = 20;
+    static final byte RETURN = 21;
+    static final byte VARIABLE_STMT = 22;
+    static final byte WHILE = 23;
+    static final byte BREAK = 24;
+    static final byte CONTINUE = 25;
+
+    // Literal value tags
+    static final byte NIL_VALUE = 0;
+    static final byte TRUE_VALUE = 1;
+    static final byte FALSE_VALUE = 2;
+    static final byte NUMBER_VALUE = 3;
+    static final byte STRING_VALUE = 4;
+
+    private ByteBuffer out = ByteBuffer.allocate(4096);
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringsIndexes = new HashMap<>();
+
+    byte[] write(List<Stmt> statements) {
+        writeStatements(statements);
+        var nodes = out.flip();
+
+        var encodedStrings = strings.stream().map(s -> s.getBytes(StandardCharsets.UTF_8)).toList();
+        var stringsSize = encodedStrings.stream().mapToInt(utf8 -> Integer.BYTES + utf8.length).sum();
+        var result = ByteBuffer.allocate(3 * Integer.BYTES + stringsSize + nodes.remaining());
+        result.putInt(MAGIC).putInt(FORMAT_VERSION).putInt(strings.size());
+        encodedStrings.forEach(utf8 -> result.putInt(utf8.length).put(utf8));
+        result.put(nodes);
+        return result.array();
+    }
+
+    private void write(Stmt stmt) {
+        if (stmt == null) {
+            writeByte(NULL);
+        } else {
+            stmt.accept(this);
+        }
+    }
+
+    private void write(Expr expr) {
+        if (expr == null) {
+            writeByte(NULL);
+        } else {
+            expr.accept(this);
+        }
+    }
+
+    private void writeStatements(List<? extends Stmt> statements) {
+        writeInt(statements.size());
+        statements.forEach(this::write);
+    }
+
+    private void writeExpressions(List<Expr> expressions) {
+        writeInt(expressions.size());
+        expressions.forEach(this::write);
+    }
+
+    private void writeTokens(List<Token> tokens) {
+        writeInt(tokens.size());
+        tokens.forEach(this::write);
+    }
+
+    private void write(Token token) {
+        writeByte(token.type().ordinal());
+        writeString(token.lexeme());
+        writeValue(token.literal());
+        writeInt(token.line());
+    }
+
+    private void writeValue(Object value) {
+        switch (value) {
+            case null -> writeByte(NIL_VALUE);
+            case Boolean b -> writeByte(b ? TRUE_VALUE : FALSE_VALUE);
+            case Double d -> {
+                writeByte(NUMBER_VALUE);
+                ensureCapacity(Double.BYTES);
+                out.putDouble(d);
+            }
+            case String s -> {
+                writeByte(STRING_VALUE);
+                writeString(s);
+            }
+            default -> throw new IllegalArgumentException("Not a literal value: " + value);
+        }
+    }
+
+    private void writeString(String string) {
+        writeInt(stringsIndexes.computeIfAbsent(string, s -> {
+            strings.add(s);
+            return strings.size() - 1;
+        }));
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        out.put((byte) value);
+    }
+
+    private void writeInt(int value) {
+        ensureCapacity(Integer.BYTES);
+        out.putInt(value);
+    }
+
+    private void writeInts(int[] values) {
+        writeInt(values.length);
+        for (var value : values) {
+            writeInt(value);
+        }
+    }
+
+    private void ensureCapacity(int needed) {
+        if (out.remaining() < needed) {
+            out = ByteBuffer.allocate(out.capacity() * 2).put(out.flip());
+        }
+    }
+
+    @Override
+    public Void visitAssignmentExpr(Expr.Assignment expr) {
+        writeByte(ASSIGNMENT);
+        write(expr.name);
+        write(expr.value);
+        writeInt(expr.depth);
+        writeInt(expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        writeByte(BINARY);
+        write(expr.left);
+        write(expr.operator);
+        write(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        writeByte(CALL);
+        write(expr.callee);
+        write(expr.paren);
+        writeExpressions(expr.arguments);
+        writeByte(expr.tailCall ? 1 : 0);
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        writeByte(GET);
+        write(expr.object);
+        write(expr.name);
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        writeByte(TERNARY);
+        write(expr.selector);
+        write(expr.left);
+        write(expr.right);
+        writeInt(expr.selectorLine);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        writeByte(GROUPING);
+        write(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        writeByte(LITERAL);
+        writeValue(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        writeByte(LOGICAL);
+        write(expr.left);
+        write(expr.operator);
+        write(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        writeByte(SET);
+        write(expr.object);
+        write(expr.name);
+        write(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        writeByte(THIS);
+        write(expr.keyword);
+        writeInt(expr.depth);
+        writeInt(expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        writeByte(UNARY);
+        write(expr.operator);
+        write(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        writeByte(VARIABLE);
+        write(expr.name);
+        writeInt(expr.depth);
+        writeInt(expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionExpr(Expr.Function expr) {
+        writeByte(FUNCTION_EXPR);
+        writeTokens(expr.params);
+        writeStatements(expr.body);
+        writeInt(expr.localCount);
+        writeInts(expr.captures);
+        return null;
+    }
+
+    @Override
+    public Void visitLoxListExpr(Expr.LoxList expr) {
+        writeByte(LIST);
+        writeExpressions(expr.elements);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        writeByte(BLOCK);
+        writeStatements(stmt.statements);
+        writeInt(stmt.localCount);
+        writeByte(stmt.flattened ? 1 : 0);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        writeByte(CLASS);
+        write(stmt.name);
+        writeStatements(stmt.methods);
+        writeInt(stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        writeByte(EXPRESSION);
+        write(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        writeByte(FUNCTION);
+        write(stmt.name);
+        writeTokens(stmt.params);
+        writeStatements(stmt.body);
+        writeInt(stmt.slot);
+        writeInt(stmt.localCount);
+        writeInts(stmt.captures);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        writeByte(IF);
+        write(stmt.condition);
+        write(stmt.thenBranch);
+        write(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        writeByte(PRINT);
+        write(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        writeByte(RETURN);
+        write(stmt.keyword);
+        write(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableStmt(Stmt.Variable stmt) {
+        writeByte(VARIABLE_STMT);
+        write(stmt.name);
+        write(stmt.initializer);
+        writeInt(stmt.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        writeByte(WHILE);
+        write(stmt.condition);
+        write(stmt.body);
+        write(stmt.forLoopStep);
+        return null;
+    }
+
+    // The loop condition of break and continue is only used by the Parser, so it is not stored
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        writeByte(BREAK);
+        write(stmt.keyword);
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+        writeByte(CONTINUE);
+        write(stmt.keyword);
+        return null;
+    }
+}
@@ -0,0 +1,430 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.craftinginterpreters.lox.OpCode.*;
+
+// Compiles resolved statements into Chunks for the VM.
+// Variables keep the (depth, slot) addressing that the Resolver assigned, so scopes are still Environments at runtime.
+public class BytecodeCompiler implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+
+    private ChunkBuilder current;
+
+    Chunk compile(List<Stmt> statements) {
+        current = new ChunkBuilder("script", 0, 0, new int[0], false);
+        statements.forEach(this::compile);
+        emitReturnNil();
+        return current.build();
+    }
+
+    private void compile(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void compile(Expr expr) {
+        expr.accept(this);
+    }
+
+    private Chunk compileFunction(String name, List<Token> params, List<Stmt> body, int localCount, int[] captures,
+                                  boolean initializer) {
+        var enclosing = current;
+        current = new ChunkBuilder(name, params.size(), localCount, captures, initializer);
+        current.line = enclosing.line;
+        try {
+            body.forEach(this::compile);
+            emitReturnNil();
+            return current.build();
+        } finally {
+            current = enclosing;
+        }
+    }
+
+    private void emitReturnNil() {
+        emit(NIL, 1);
+        emit(RETURN, -1);
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.flattened) {
+            stmt.statements.forEach(this::compile);
+            return null;
+        }
+        emit(PUSH_SCOPE, 0, stmt.localCount);
+        current.scopeDepth++;
+        stmt.statements.forEach(this::compile);
+        current.scopeDepth--;
+        emit(POP_SCOPE, 0);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        current.line = stmt.name.line();
+        stmt.methods.forEach(m -> {
+            var initializer = m.name.lexeme().equals("init");
+            var chunk = compileFunction(m.name.lexeme(), m.params, m.body, m.localCount, m.captures, initializer);
+            emit(CLOSURE, 1, current.constant(chunk));
+        });
+        emit(CLASS, 1 - stmt.methods.size(), current.constant(stmt.name.lexeme()), stmt.methods.size());
+        emitDefine(stmt.slot, stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        compile(stmt.expression);
+        emit(POP, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        current.line = stmt.name.line();
+        var chunk = compileFunction(stmt.name.lexeme(), stmt.params, stmt.body, stmt.localCount, stmt.captures,
+            false);
+        emit(CLOSURE, 1, current.constant(chunk));
+        emitDefine(stmt.slot, stmt.name);
+        return null;
+    }
+
+    private void emitDefine(int slot, Token name) {
+        if (slot == -1) {
+            emit(DEFINE_GLOBAL, -1, current.constant(name.lexeme()));
+        } else {
+            emit(DEFINE_LOCAL, -1, slot);
+        }
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        compile(stmt.condition);
+        var elseJump = emitJump(JUMP_IF_FALSE, -1);
+        compile(stmt.thenBranch);
+        if (stmt.elseBranch == null) {
+            patchJump(elseJump);
+        } else {
+            var endJump = emitJump(JUMP, 0);
+            patchJump(elseJump);
+            compile(stmt.elseBranch);
+            patchJump(endJump);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        compile(stmt.expression);
+        emit(PRINT, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        current.line = stmt.keyword.line();
+        if (stmt.value == null) {
+            emit(NIL, 1);
+        } else {
+            compile(stmt.value);
+        }
+        emit(RETURN, -1);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableStmt(Stmt.Variable stmt) {
+        current.line = stmt.name.line();
+        if (stmt.initializer == null) {
+            emit(NIL, 1);
+        } else {
+            compile(stmt.initializer);
+        }
+        emitDefine(stmt.slot, stmt.name);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        var loopStart = current.size();
+        compile(stmt.condition);
+        var exitJump = emitJump(JUMP_IF_FALSE, -1);
+
+        var loop = new Loop(current.scopeDepth);
+        current.loops.push(loop);
+        compile(stmt.body);
+        current.loops.pop();
+
+        loop.continueJumps.forEach(this::patchJump);
+        if (stmt.forLoopStep != null) {
+            compile(stmt.forLoopStep);
+        }
+        emit(JUMP, 0, loopStart);
+
+        patchJump(exitJump);
+        loop.breakJumps.forEach(this::patchJump);
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        var loop = current.loops.peek();
+        emitScopesExit(loop);
+        loop.breakJumps.add(emitJump(JUMP, 0));
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+        var loop = current.loops.peek();
+        emitScopesExit(loop);
+        loop.continueJumps.add(emitJump(JUMP, 0));
+        return null;
+    }
+
+    private void emitScopesExit(Loop loop) {
+        for (var i = loop.scopeDepth; i < current.scopeDepth; i++) {
+            emit(POP_SCOPE, 0);
+        }
+    }
+
+    @Override
+    public Void visitAssignmentExpr(Expr.Assignment expr) {
+        compile(expr.value);
+        current.line = expr.name.line();
+        if (expr.depth == -1) {
+            emit(SET_GLOBAL, 0, current.constant(expr.name));
+        } else {
+            emit(SET_LOCAL, 0, expr.depth, expr.slot, current.constant(expr.name));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        compile(expr.left);
+        compile(expr.right);
+        current.line = expr.operator.line();
+        var op = switch (expr.operator.type()) {
+            case MINUS -> SUBTRACT;
+            case PLUS -> ADD;
+            case SLASH -> DIVIDE;
+            case STAR -> MULTIPLY;
+            case GREATER -> GREATER;
+            case GREATER_EQUAL -> GREATER_EQUAL;
+            case LESS -> LESS;
+            case LESS_EQUAL -> LESS_EQUAL;
+            case BANG_EQUAL -> NOT_EQUAL;
+            case EQUAL_EQUAL -> EQUAL;
+            default -> throw notSupportedOperatorException(expr.operator, "Binary");
+        };
+        emit(op, -1);
+        return null;
+    }
+
+    private RuntimeError notSupportedOperatorException(Token operator, String expression) {
+        return new RuntimeError(operator, "Not supported operator in %s expression".formatted(expression));
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        compile(expr.callee);
+        expr.arguments.forEach(this::compile);
+        current.line = expr.paren.line();
+        emit(expr.tailCall ? TAIL_CALL : CALL, -expr.arguments.size(), expr.arguments.size());
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        compile(expr.object);
+        current.line = expr.name.line();
+        emit(GET_PROPERTY, 0, current.constant(expr));
+        return null;
+    }
+
+    @Override
+    public Void visitTernaryExpr(Expr.Ternary expr) {
+        compile(expr.selector);
+        current.line = expr.selectorLine;
+        var rightJump = emitJump(TERNARY_JUMP, -1);
+        compile(expr.left);
+        var endJump = emitJump(JUMP, 0);
+        patchJump(rightJump);
+        // Only one of the branches leaves its value on the stack
+        current.stackDepth--;
+        compile(expr.right);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        compile(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        if (expr.value == null) {
+            emit(NIL, 1);
+        } else if (expr.value instanceof Boolean b) {
+            emit(b ? TRUE : FALSE, 1);
+        } else {
+            emit(CONSTANT, 1, current.constant(expr.value));
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        compile(expr.left);
+        var op = expr.operator.type() == TokenType.OR ? JUMP_IF_TRUE_OR_POP : JUMP_IF_FALSE_OR_POP;
+        var endJump = emitJump(op, -1);
+        compile(expr.right);
+        patchJump(endJump);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        compile(expr.object);
+        current.line = expr.name.line();
+        emit(CHECK_INSTANCE, 0, current.constant(expr.name));
+        compile(expr.value);
+        current.line = expr.name.line();
+        emit(SET_PROPERTY, -1, current.constant(expr));
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        current.line = expr.keyword.line();
+        emit(GET_LOCAL, 1, expr.depth, expr.slot);
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        compile(expr.right);
+        current.line = expr.operator.line();
+        var op = switch (expr.operator.type()) {
+            case MINUS -> NEGATE;
+            case BANG -> NOT;
+            default -> throw notSupportedOperatorException(expr.operator, "Unary");
+        };
+        emit(op, 0);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        current.line = expr.name.line();
+        if (expr.depth == -1) {
+            emit(GET_GLOBAL, 1, current.constant(expr.name));
+        } else {
+            emit(GET_LOCAL, 1, expr.depth, expr.slot);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionExpr(Expr.Function expr) {
+        var chunk = compileFunction("anonymous", expr.params, expr.body, expr.localCount, expr.captures, false);
+        emit(CLOSURE, 1, current.constant(chunk));
+        return null;
+    }
+
+    @Override
+    public Void visitLoxListExpr(Expr.LoxList expr) {
+        expr.elements.forEach(this::compile);
+        emit(LIST, 1 - expr.elements.size(), expr.elements.size());
+        return null;
+    }
+
+    private void emit(int op, int stackEffect, int... operands) {
+        current.add(op);
+        for (var o : operands) {
+            current.add(o);
+        }
+        current.stackDepth += stackEffect;
+        current.maxStack = Math.max(current.maxStack, current.stackDepth);
+    }
+
+    // Returns position of the jump target, to be patched once it is known
+    private int emitJump(int op, int stackEffect) {
+        emit(op, stackEffect, -1);
+        return current.size() - 1;
+    }
+
+    private void patchJump(int position) {
+        current.code[position] = current.size();
+    }
+
+    private static class Loop {
+        final int scopeDepth;
+        final List<Integer> breakJumps = new ArrayList<>();
+        final List<Integer> continueJumps = new ArrayList<>();
+
+        Loop(int scopeDepth) {
+            this.scopeDepth = scopeDepth;
+        }
+    }
+
+    private static class ChunkBuilder {
+        final String name;
+        final int arity;
+        final int localCount;
+        final int[] captures;
+        final boolean initializer;
+        final List<Object> constants = new ArrayList<>();
+        final Map<Object, Integer> constantsIndexes = new HashMap<>();
+        final Deque<Loop> loops = new ArrayDeque<>();
+        int[] code = new int[64];
+        int[] lines = new int[64];
+        int count = 0;
+        int line = 1;
+        int stackDepth = 0;
+        int maxStack = 0;
+        int scopeDepth = 0;
+
+        ChunkBuilder(String name, int arity, int localCount, int[] captures, boolean initializer) {
+            this.name = name;
+            this.arity = arity;
+            this.localCount = localCount;
+            this.captures = captures;
+            this.initializer = initializer;
+        }
+
+        void add(int value) {
+            if (count == code.length) {
+                code = Arrays.copyOf(code, count * 2);
+                lines = Arrays.copyOf(lines, count * 2);
+            }
+            code[count] = value;
+            lines[count] = line;
+            count++;
+        }
+
+        int size() {
+            return count;
+        }
+
+        int constant(Object value) {
+            return constantsIndexes.computeIfAbsent(value, v -> {
+                constants.add(v);
+                return constants.size() - 1;
+            });
+        }
+
+        Chunk build() {
+            return new Chunk(name, arity, localCount, captures, initializer, Arrays.copyOf(code, count),
+                Arrays.copyOf(lines, count), constants.toArray(), maxStack);
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.craftinginterpreters.lox;
+
+// Compiled function (or top-level script) for the VM: instructions with their source lines and the constant pool,
+// and the variables its closures capture, as the Resolver found them
+record Chunk(String name, int arity, int localCount, int[] captures, boolean initializer,
+             int[] code, int[] lines, Object[] constants, int maxStack) {
+}
@@ -0,0 +1,74 @@
+package com.craftinginterpreters.lox;
+
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+
+// A script scanned, parsed and resolved once, to be executed any number of times by any Interpreters,
+// concurrently too: statements are never changed after resolution, inline caches aside which are safe to share.
+public final class CompiledScript {
+
+    private final List<Stmt> statements;
+
+    CompiledScript(List<Stmt> statements) {
+        this.statements = List.copyOf(statements);
+    }
+
+    // Empty if errors were found, they are given to the reporter
+    public static Optional<CompiledScript> compile(String source, ErrorReporter reporter) {
+        return compile(new StringReader(source), reporter);
+    }
+
+    // The source is scanned and parsed as it is read, it is never held in memory as a whole
+    public static Optional<CompiledScript> compile(Reader source, ErrorReporter reporter) {
+        var errors = new ErrorCounter(reporter);
+        var scanner = new Scanner(source, errors);
+        return resolve(new Parser(scanner, errors).parse(), errors);
+    }
+
+    // For big sources made of many top-level declarations: they are parsed in parallel on the pool,
+    // then resolved in order. The source is held in memory as a whole, with its tokens.
+    public static Optional<CompiledScript> compile(String source, ErrorReporter reporter, ForkJoinPool pool) {
+        var errors = new ErrorCounter(reporter);
+        return resolve(new ParallelParser(pool, errors).parse(source), errors);
+    }
+
+    private static Optional<CompiledScript> resolve(List<Stmt> statements, ErrorCounter errors) {
+        // Stop if there was a syntax error
+        if (errors.count > 0) {
+            return Optional.empty();
+        }
+
+        new Resolver(errors).resolve(statements);
+        if (errors.count > 0) {
+            return Optional.empty();
+        }
+        return Optional.of(new CompiledScript(new Optimizer().optimize(statements)));
+    }
+
+    List<Stmt> statements() {
+        return statements;
+    }
+
+    private static class ErrorCounter implements ErrorReporter {
+        private final ErrorReporter reporter;
+        int count = 0;
+
+        ErrorCounter(ErrorReporter reporter) {
+            this.reporter = reporter;
+        }
+
+        @Override
+        public void error(int line, String where, String message) {
+            count++;
+            reporter.error(line, where, message);
+        }
+
+        @Override
+        public void runtimeError(RuntimeError error) {
+            reporter.runtimeError(error);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+// A loop counting a local variable by a constant step against a limit, `for (var i = a; i < n; i = i + 1)` typically:
+// the counter is declared right before the loop in the same block, as for loops do, so no code outside can assign it;
+// the condition compares the counter with the limit, the step adds a number literal to it, the body never assigns it.
+// The Interpreter keeps the counter as a double, only storing it for the body to read, and compares it without boxing.
+// The limit is evaluated once, before the first iteration, when the body can't change it: the limit is made of literals,
+// variables the body doesn't assign and sizes of lists, and the body calls no Lox code, only natives that keep the
+// size of lists (both checked when the loop starts). Elements of lists are never read by such limits, since the body
+// may well set them.
+record CountedLoop(Expr.Variable counter, Expr.Binary condition, double step, boolean invariantLimit,
+                   List<Expr.Variable> limitCallees, List<Expr.Variable> bodyCallees) {
+
+    private static final Set<TokenType> COMPARISONS =
+        Set.of(TokenType.LESS, TokenType.LESS_EQUAL, TokenType.GREATER, TokenType.GREATER_EQUAL);
+
+    // Marks the counted loops among the statements of a block
+    static void recognizeAll(List<Stmt> statements) {
+        for (var i = 1; i < statements.size(); i++) {
+            if (statements.get(i - 1) instanceof Stmt.Variable declaration && statements.get(i) instanceof Stmt.While loop) {
+                loop.countedLoop = recognize(declaration, loop).orElse(null);
+            }
+        }
+    }
+
+    private static Optional<CountedLoop> recognize(Stmt.Variable declaration, Stmt.While loop) {
+        if (!(loop.condition instanceof Expr.Binary condition) || !COMPARISONS.contains(condition.operator.type())
+            || !(condition.left instanceof Expr.Variable counter) || counter.depth != 0 || counter.slot != declaration.slot) {
+            return Optional.empty();
+        }
+        return step(loop.forLoopStep, counter).flatMap(step -> {
+            var body = new Effects();
+            body.scan(loop.body);
+            if (body.assigned.contains(counter.name.lexeme())) {
+                return Optional.empty();
+            }
+            var limit = new Effects();
+            var invariantLimit = !body.callsLoxCode && limit.isInvariant(condition.right, body.assigned);
+            return Optional.of(new CountedLoop(counter, condition, step, invariantLimit,
+                List.copyOf(limit.nativeCallees), List.copyOf(body.nativeCallees)));
+        });
+    }
+
+    // Number added to the counter by `counter = counter + literal` or `counter = counter - literal`
+    private static Optional<Double> step(Stmt forLoopStep, Expr.Variable counter) {
+        if (forLoopStep instanceof Stmt.Expression statement
+            && statement.expression instanceof Expr.Assignment assignment
+            && assignment.depth == counter.depth && assignment.slot == counter.slot
+            && assignment.value instanceof Expr.Binary increment
+            && increment.left instanceof Expr.Variable variable
+            && variable.depth == counter.depth && variable.slot == counter.slot
+            && increment.right instanceof Expr.Literal literal && literal.value instanceof Double amount) {
+            return switch (increment.operator.type()) {
+                case PLUS -> Optional.of(amount);
+                case MINUS -> Optional.of(-amount);
+                default -> Optional.empty();
+            };
+        }
+        return Optional.empty();
+    }
+
+    // What running statements may change: assigned variables (by name, shadowing aside), and whether Lox code is called.
+    // Global functions called are assumed to be natives keeping list sizes, which is checked when the loop starts.
+    private static class Effects implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+        final Set<String> assigned = new HashSet<>();
+        final List<Expr.Variable> nativeCallees = new ArrayList<>();
+        boolean callsLoxCode = false;
+
+        void scan(Stmt stmt) {
+            if (stmt != null) {
+                stmt.accept(this);
+            }
+        }
+
+        void scan(Expr expr) {
+            if (expr != null) {
+                expr.accept(this);
+            }
+        }
+
+        void scanStatements(List<? extends Stmt> statements) {
+            statements.forEach(this::scan);
+        }
+
+        // Literals, variables, arithmetic and calls of global functions (size, once checked) on them
+        boolean isInvariant(Expr expr, Set<String> assignedInBody) {
+            return switch (expr) {
+                case Expr.Literal literal -> true;
+                case Expr.Variable variable -> !assignedInBody.contains(variable.name.lexeme());
+                case Expr.Unary unary -> isInvariant(unary.right, assignedInBody);
+                case Expr.Binary binary ->
+                    isInvariant(binary.left, assignedInBody) && isInvariant(binary.right, assignedInBody);
+                case Expr.Call call -> {
+                    if (!(call.callee instanceof Expr.Variable callee) || callee.depth != -1) {
+                        yield false;
+                    }
+                    nativeCallees.add(callee);
+                    yield call.arguments.stream().allMatch(argument -> isInvariant(argument, assignedInBody));
+                }
+                default -> false;
+            };
+        }
+
+        @Override
+        public Void visitAssignmentExpr(Expr.Assignment expr) {
+            assigned.add(expr.name.lexeme());
+            scan(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitBinaryExpr(Expr.Binary expr) {
+            scan(expr.left);
+            scan(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitCallExpr(Expr.Call expr) {
+            if (expr.callee instanceof Expr.Variable callee && callee.depth == -1) {
+                nativeCallees.add(callee);
+            } else {
+                callsLoxCode = true;
+                scan(expr.callee);
+            }
+            expr.arguments.forEach(this::scan);
+            return null;
+        }
+
+        @Override
+        public Void visitGetExpr(Expr.Get expr) {
+            scan(expr.object);
+            return null;
+        }
+
+        @Override
+        public Void visitTernaryExpr(Expr.Ternary expr) {
+            scan(expr.selector);
+            scan(expr.left);
+            scan(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitGroupingExpr(Expr.Grouping expr) {
+            scan(expr.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitLiteralExpr(Expr.Literal expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitLogicalExpr(Expr.Logical expr) {
+            scan(expr.left);
+            scan(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitSetExpr(Expr.Set expr) {
+            scan(expr.object);
+            scan(expr.value);
+            return null;
+        }
+
+        @Override
+        public Void visitThisExpr(Expr.This expr) {
+            return null;
+        }
+
+        @Override
+        public Void visitUnaryExpr(Expr.Unary expr) {
+            scan(expr.right);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableExpr(Expr.Variable expr) {
+            return null;
+        }
+
+        // Not called here, but its assignments are counted in case it is called later on
+        @Override
+        public Void visitFunctionExpr(Expr.Function expr) {
+            scanStatements(expr.body);
+            return null;
+        }
+
+        @Override
+        public Void visitLoxListExpr(Expr.LoxList expr) {
+            expr.elements.forEach(this::scan);
+            return null;
+        }
+
+        @Override
+        public Void visitBlockStmt(Stmt.Block stmt) {
+            scanStatements(stmt.statements);
+            return null;
+        }
+
+        @Override
+        public Void visitClassStmt(Stmt.Class stmt) {
+            scanStatements(stmt.methods);
+            return null;
+        }
+
+        @Override
+        public Void visitExpressionStmt(Stmt.Expression stmt) {
+            scan(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitFunctionStmt(Stmt.Function stmt) {
+            scanStatements(stmt.body);
+            return null;
+        }
+
+        @Override
+        public Void visitIfStmt(Stmt.If stmt) {
+            scan(stmt.condition);
+            scan(stmt.thenBranch);
+            scan(stmt.elseBranch);
+            return null;
+        }
+
+        @Override
+        public Void visitPrintStmt(Stmt.Print stmt) {
+            scan(stmt.expression);
+            return null;
+        }
+
+        @Override
+        public Void visitReturnStmt(Stmt.Return stmt) {
+            scan(stmt.value);
+            return null;
+        }
+
+        @Override
+        public Void visitVariableStmt(Stmt.Variable stmt) {
+            scan(stmt.initializer);
+            return null;
+        }
+
+        @Override
+        public Void visitWhileStmt(Stmt.While stmt) {
+            scan(stmt.condition);
+            scan(stmt.body);
+            scan(stmt.forLoopStep);
+            return null;
+        }
+
+        @Override
+        public Void visitBreakStmt(Stmt.Break stmt) {
+            return null;
+        }
+
+        @Override
+        public Void visitContinueStmt(Stmt.Continue stmt) {
+            return null;
+        }
+    }
+}
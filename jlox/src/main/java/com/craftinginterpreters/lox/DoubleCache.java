@@ -0,0 +1,28 @@
+package com.craftinginterpreters.lox;
+
+// Like Integer.valueOf, but for the doubles that Lox uses for all of its numbers:
+// small integral values, loop counters and indexes mostly, are boxed once and shared
+final class DoubleCache {
+
+    private static final int MIN = -128;
+    private static final int MAX = 1023;
+    private static final Double[] CACHE = new Double[MAX - MIN + 1];
+
+    static {
+        for (var i = 0; i < CACHE.length; i++) {
+            CACHE[i] = (double) (i + MIN);
+        }
+    }
+
+    private DoubleCache() {
+    }
+
+    static Double valueOf(double value) {
+        var index = (int) value;
+        // -0.0 == 0, but it has to stay negative
+        if (index == value && index >= MIN && index <= MAX && (index != 0 || Double.doubleToRawLongBits(value) == 0)) {
+            return CACHE[index - MIN];
+        }
+        return value;
+    }
+}
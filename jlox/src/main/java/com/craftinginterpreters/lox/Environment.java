@@ -2,36 +2,81 @@ package com.craftinginterpreters.lox;
 
 import java.util.HashMap;
 import java.util.Map;
-import java.util.Optional;
 
+// Globals are looked up by name, since they can be (re)defined at any time.
+// Locals are resolved up front to (distance, slot) pairs and kept in a plain array.
+// Functions don't keep the Environment they are created in, only the variables they use from it (see capture()):
+// such a variable is moved into a Cell the first time it is captured, which its slot and closures then share.
+// Callbacks run in parallel see a read-only view of the globals, and may only assign the cells they made
+// (see ParallelList).
 public class Environment {
+
+    // Closure of the functions that capture nothing, never written to
+    private static final Environment NO_CAPTURES = new Environment(null, 0);
+
     private final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    private final Map<String, Object> values;
+    private final Object[] slots;
+    // Globals that can't be assigned
+    private final boolean readOnly;
 
-    Environment(Environment enclosing) {
+    Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        this.values = null;
+        this.slots = new Object[size];
+        this.readOnly = false;
     }
 
     Environment() {
-        this(null);
+        this(new HashMap<>(), false);
+    }
+
+    private Environment(Map<String, Object> values, boolean readOnly) {
+        this.enclosing = null;
+        this.values = values;
+        this.slots = null;
+        this.readOnly = readOnly;
     }
 
+    // The same globals, read only: safe to share between threads as long as nothing else writes to them
+    Environment readOnlyGlobals() {
+        return new Environment(values, true);
+    }
+
+
     void define(String name, Object value) {
         values.put(name, value);
     }
 
+    // A captured slot is already a Cell when a function captures its own name, or a class its own
+    void define(int slot, Object value) {
+        if (slots[slot] instanceof Cell cell) {
+            cell.value = value;
+        } else {
+            slots[slot] = value;
+        }
+    }
+
     Object get(Token name) {
-        return Optional.ofNullable(values.get(name.lexeme()))
-            .or(() -> Optional.ofNullable(enclosing).map(enc -> enc.get(name)))
-            .orElseThrow(() -> undefinedVariableError(name));
+        var value = values.get(name.lexeme());
+        if (value == null && !values.containsKey(name.lexeme())) {
+            throw undefinedVariableError(name);
+        }
+        return value;
+    }
+
+    // Null for undefined globals too
+    Object getIfDefined(String name) {
+        return values.get(name);
     }
 
     private RuntimeError undefinedVariableError(Token name) {
         return new RuntimeError(name, "Undefined variable '%s'".formatted(name.lexeme()));
     }
 
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    Object getAt(int distance, int slot) {
+        var value = ancestor(distance).slots[slot];
+        return value instanceof Cell cell ? cell.value : value;
     }
 
     Environment ancestor(int distance) {
@@ -43,18 +88,61 @@ public class Environment {
     }
 
     void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme())) {
-            values.put(name.lexeme(), value);
-            return;
+        if (!values.containsKey(name.lexeme())) {
+            throw undefinedVariableError(name);
         }
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+        if (readOnly) {
+            var message = "Can't assign global variable '%s' from a parallel callback".formatted(name.lexeme());
+            throw new RuntimeError(name, message);
         }
-        throw undefinedVariableError(name);
+        values.put(name.lexeme(), value);
     }
 
-    void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme(), value);
+    // False, assigning nothing, if the writer is a worker which didn't make the cell of the variable.
+    // Variables not in a cell are never shared, belonging to the frame of a function being called.
+    boolean assignAt(int distance, int slot, Object value, ParallelList.Owner writer) {
+        var slots = ancestor(distance).slots;
+        if (slots[slot] instanceof Cell cell) {
+            if (!ParallelList.Owner.canWrite(writer, cell.owner)) {
+                return false;
+            }
+            cell.value = value;
+        } else {
+            slots[slot] = value;
+        }
+        return true;
+    }
+
+    // Closure of a function created here: the cells of the variables it captures, given as (distance, slot) pairs
+    // by the Resolver, and nothing else, so that the rest of the scopes can be collected
+    Environment capture(int[] captures, ParallelList.Owner owner) {
+        if (captures.length == 0) {
+            return NO_CAPTURES;
+        }
+        var closure = new Environment(null, captures.length / 2);
+        for (var i = 0; i < captures.length; i += 2) {
+            closure.slots[i / 2] = ancestor(captures[i]).cell(captures[i + 1], owner);
+        }
+        return closure;
+    }
+
+    private Cell cell(int slot, ParallelList.Owner owner) {
+        if (slots[slot] instanceof Cell cell) {
+            return cell;
+        }
+        var cell = new Cell(slots[slot], owner);
+        slots[slot] = cell;
+        return cell;
+    }
+
+    // Variable shared by the Environment declaring it and the closures capturing it
+    private static final class Cell {
+        Object value;
+        final ParallelList.Owner owner;
+
+        Cell(Object value, ParallelList.Owner owner) {
+            this.value = value;
+            this.owner = owner;
+        }
     }
 }
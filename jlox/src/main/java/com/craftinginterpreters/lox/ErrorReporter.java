@@ -0,0 +1,38 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+
+// Receives the errors found while compiling and running scripts, so each embedder can route them its own way.
+public interface ErrorReporter {
+
+    // Syntax and resolution errors; where locates the error within the line, like " at 'foo'"
+    void error(int line, String where, String message);
+
+    void runtimeError(RuntimeError error);
+
+    default void error(int line, String message) {
+        error(line, "", message);
+    }
+
+    default void error(Token token, String message) {
+        if (token.type() == TokenType.EOF) {
+            error(token.line(), " at end ", message);
+        } else {
+            error(token.line(), " at '%s'".formatted(token.lexeme()), message);
+        }
+    }
+
+    static ErrorReporter printingTo(PrintStream stream) {
+        return new ErrorReporter() {
+            @Override
+            public void error(int line, String where, String message) {
+                stream.println("[line " + line + "] Error" + where + ": " + message);
+            }
+
+            @Override
+            public void runtimeError(RuntimeError error) {
+                stream.printf("%s\n[line %d ]%n", error.getMessage(), error.line);
+            }
+        };
+    }
+}
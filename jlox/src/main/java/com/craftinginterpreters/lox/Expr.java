@@ -40,6 +40,8 @@ abstract class Expr {
     static class Assignment extends Expr {
         final Token name;
         final Expr value;
+        int depth = -1;
+        int slot = -1;
 
         Assignment(Token name, Expr value) {
             this.name = name;
@@ -73,6 +75,9 @@ abstract class Expr {
         final Expr callee;
         final Token paren;
         final List<Expr> arguments;
+        boolean tailCall;
+        int calls;
+        Inliner.InlinedCall inlined;
 
         Call(Expr callee, Token paren, List<Expr> arguments) {
             this.callee = callee;
@@ -89,6 +94,7 @@ abstract class Expr {
     static class Get extends Expr {
         final Expr object;
         final Token name;
+        PropertyCache cache = PropertyCache.EMPTY;
 
         Get(Expr object, Token name) {
             this.object = object;
@@ -167,6 +173,7 @@ abstract class Expr {
         final Expr object;
         final Token name;
         final Expr value;
+        PropertyCache cache = PropertyCache.EMPTY;
 
         Set(Expr object, Token name, Expr value) {
             this.object = object;
@@ -182,6 +189,8 @@ abstract class Expr {
 
     static class This extends Expr {
         final Token keyword;
+        int depth = -1;
+        int slot = -1;
 
         This(Token keyword) {
             this.keyword = keyword;
@@ -210,6 +219,8 @@ abstract class Expr {
 
     static class Variable extends Expr {
         final Token name;
+        int depth = -1;
+        int slot = -1;
 
         Variable(Token name) {
             this.name = name;
@@ -224,6 +235,8 @@ abstract class Expr {
     static class Function extends Expr {
         final List<Token> params;
         final List<Stmt> body;
+        int localCount;
+        int[] captures = {};
 
         Function(List<Token> params, List<Stmt> body) {
             this.params = params;
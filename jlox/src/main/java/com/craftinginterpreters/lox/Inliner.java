@@ -0,0 +1,118 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Inlines the calls of small global functions at the sites calling them often enough: functions whose body only
+// returns an expression reading their parameters and globals, making no closure and never referring to themselves.
+// The site evaluates a copy of that expression in place of the call, parameters being read from the argument values
+// rather than from an Environment. The copy is guarded by the declaration of the function it was made from, not the
+// function itself: all the functions Interpreters running the same CompiledScript make from it share the copy, which
+// captures nothing and reads globals from the Interpreter evaluating it. Once the global called holds anything else,
+// the site deoptimises back to regular calls, and profiles again.
+// Sites are shared by concurrently running Interpreters: their profile is a plain counter, racing threads at worst
+// delaying inlining, and copies are never changed once published through the final fields of InlinedCall.
+// Calls within copies are never inlined, so that mutually recursive functions don't get copied over and over.
+final class Inliner {
+
+    // Calls from a site before its callee is inlined
+    static final int CALLS_BEFORE_INLINING = 100;
+    // Depth of the variables of copies which are parameters of the function inlined
+    static final int ARGUMENT_DEPTH = -2;
+    // Calls of a site that is never inlined
+    static final int NEVER = -1;
+    // Beyond that many nodes, the call is not what costs most
+    private static final int MAX_NODES = 24;
+
+    // Body of the function to evaluate in place of calls to it, as long as the callee is declared with that body
+    record InlinedCall(List<Stmt> functionBody, Expr body) {
+
+        boolean guards(Object callee) {
+            return callee instanceof LoxFunction function && function.body() == functionBody;
+        }
+    }
+
+    private final String functionName;
+    private final String calleeName;
+    private final boolean tailCallSite;
+    private int nodes = 0;
+    private boolean inlinable = true;
+
+    private Inliner(String functionName, String calleeName, boolean tailCallSite) {
+        this.functionName = functionName;
+        this.calleeName = calleeName;
+        this.tailCallSite = tailCallSite;
+    }
+
+    // Null if the function can't be inlined
+    static InlinedCall inline(LoxFunction function, Expr.Call site, Expr.Variable callee) {
+        var returned = function.returnedExpression();
+        if (returned == null) {
+            return null;
+        }
+        var inliner = new Inliner(function.name(), callee.name.lexeme(), site.tailCall);
+        var body = inliner.copy(returned);
+        return inliner.inlinable && inliner.nodes <= MAX_NODES ? new InlinedCall(function.body(), body) : null;
+    }
+
+    private Expr copy(Expr expr) {
+        nodes++;
+        return switch (expr) {
+            case Expr.Literal literal -> literal;
+            case Expr.Variable variable -> {
+                var copy = new Expr.Variable(variable.name);
+                copy.depth = copyDepth(variable.depth, variable.name);
+                copy.slot = variable.slot;
+                yield copy;
+            }
+            case Expr.Assignment assignment -> {
+                var copy = new Expr.Assignment(assignment.name, copy(assignment.value));
+                copy.depth = copyDepth(assignment.depth, assignment.name);
+                copy.slot = assignment.slot;
+                yield copy;
+            }
+            case Expr.Binary binary -> new Expr.Binary(copy(binary.left), binary.operator, copy(binary.right));
+            case Expr.Logical logical -> new Expr.Logical(copy(logical.left), logical.operator, copy(logical.right));
+            case Expr.Unary unary -> new Expr.Unary(unary.operator, copy(unary.right));
+            case Expr.Grouping grouping -> new Expr.Grouping(copy(grouping.expression));
+            case Expr.Ternary ternary ->
+                new Expr.Ternary(copy(ternary.selector), copy(ternary.left), copy(ternary.right), ternary.selectorLine);
+            case Expr.Call call -> {
+                // Still a tail call only where the inlined call was one
+                var copy = new Expr.Call(copy(call.callee), call.paren, copyAll(call.arguments));
+                copy.tailCall = call.tailCall && tailCallSite;
+                copy.calls = NEVER;
+                yield copy;
+            }
+            case Expr.Get get -> new Expr.Get(copy(get.object), get.name);
+            case Expr.Set set -> new Expr.Set(copy(set.object), set.name, copy(set.value));
+            case Expr.LoxList list -> new Expr.LoxList(copyAll(list.elements));
+            // 'this' and closures would need the frame of the function
+            default -> notInlinable(expr);
+        };
+    }
+
+    private List<Expr> copyAll(List<Expr> expressions) {
+        var copies = new ArrayList<Expr>(expressions.size());
+        for (var expression : expressions) {
+            copies.add(copy(expression));
+        }
+        return copies;
+    }
+
+    // Parameters are the only variables of the function itself, since its body is a single return
+    private int copyDepth(int depth, Token name) {
+        if (depth == 0) {
+            return ARGUMENT_DEPTH;
+        }
+        if (depth != -1 || name.lexeme().equals(functionName) || name.lexeme().equals(calleeName)) {
+            inlinable = false;
+        }
+        return depth;
+    }
+
+    private Expr notInlinable(Expr expr) {
+        inlinable = false;
+        return expr;
+    }
+}
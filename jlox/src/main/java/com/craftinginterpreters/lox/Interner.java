@@ -0,0 +1,71 @@
+package com.craftinginterpreters.lox;
+
+// Open addressing set of names, looked up straight from a range of characters,
+// so a String is only allocated the first time a name is seen.
+final class Interner {
+
+    private String[] table = new String[256];
+    // Table indexes are the top bits of the spread hash
+    private int shift = Integer.SIZE - 8;
+    private int count = 0;
+
+    String intern(char[] chars, int start, int length) {
+        var mask = table.length - 1;
+        for (var i = spread(hash(chars, start, length)) >>> shift; ; i = (i + 1) & mask) {
+            var name = table[i];
+            if (name == null) {
+                name = new String(chars, start, length);
+                table[i] = name;
+                if (++count * 2 > table.length) {
+                    grow();
+                }
+                return name;
+            }
+            if (matches(name, chars, start, length)) {
+                return name;
+            }
+        }
+    }
+
+    // Same as String.hashCode
+    private static int hash(char[] chars, int start, int length) {
+        var hash = 0;
+        for (var i = start; i < start + length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+
+    // Names like i1, i2, i3 have consecutive hashes, which would make long runs of slots to probe
+    private static int spread(int hash) {
+        return hash * 0x9E3779B9;
+    }
+
+    private static boolean matches(String name, char[] chars, int start, int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (var i = 0; i < length; i++) {
+            if (name.charAt(i) != chars[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void grow() {
+        var old = table;
+        table = new String[old.length * 2];
+        shift--;
+        var mask = table.length - 1;
+        for (var name : old) {
+            if (name != null) {
+                var i = spread(name.hashCode()) >>> shift;
+                while (table[i] != null) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = name;
+            }
+        }
+    }
+}
@@ -1,107 +1,174 @@
 package com.craftinginterpreters.lox;
 
-import java.util.HashMap;
+import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
-import java.util.Optional;
-import java.util.function.BiFunction;
 import java.util.stream.Collectors;
 
-public class Interpreter implements Stmt.Visitor<Void>, Expr.Visitor<Object> {
+public class Interpreter implements Stmt.Visitor<Interpreter.Completion>, Expr.Visitor<Object> {
 
-    private final Environment globals = new Environment();
-    private final Map<Expr, Integer> locals = new HashMap<>();
-    private Environment environment = globals;
+    private static final LoxCallable CLOCK = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 0;
+        }
 
-    {
-        globals.define("clock", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 0;
-            }
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter);
+        }
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return System.currentTimeMillis() / 1000.0;
-            }
+        @Override
+        public Object call(Interpreter interpreter) {
+            return System.currentTimeMillis() / 1000.0;
+        }
 
-            @Override
-            public String toString() {
-                return "<native fn>";
-            }
-        });
+        @Override
+        public String toString() {
+            return "<native fn>";
+        }
+    };
+
+    private final Environment globals;
+    private final PrintStream out;
+    private final ErrorReporter reporter;
+    // Stamp of what this makes when it runs callbacks in parallel (see worker()), null otherwise
+    private final ParallelList.Owner owner;
+    // VM running the VM functions called back by this worker, made on the first of them
+    private VM workerVm;
+    private Environment environment;
+    // Value of the last executed return statement, valid while its Completion.RETURN propagates
+    private Object returnValue;
+    // Call of the last executed return statement, if it returns a tail call, left to the returning LoxFunction
+    private LoxFunction.TailCall tailCall;
+    // Values of the parameters of the function whose inlined body is being evaluated
+    private Object[] inlinedArguments;
+
+    public Interpreter() {
+        this(System.out, ErrorReporter.printingTo(System.err));
+    }
+
+    // Each Interpreter has its own globals, so Interpreters running the same CompiledScript don't see each other
+    public Interpreter(PrintStream out, ErrorReporter reporter) {
+        this(new Environment(), out, reporter, null);
+        globals.define("clock", CLOCK);
         LoxList.defineFunctions(globals);
+        Memoized.defineFunctions(globals);
+        ParallelList.defineFunctions(globals);
     }
 
+    private Interpreter(Environment globals, PrintStream out, ErrorReporter reporter, ParallelList.Owner owner) {
+        this.globals = globals;
+        this.out = out;
+        this.reporter = reporter;
+        this.owner = owner;
+        this.environment = globals;
+    }
 
-    void interpret(List<Stmt> statements) {
-        try {
-            statements.forEach(this::execute);
-        } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+    // Interpreter for one thread running callbacks in parallel, which reads the globals of this one but can't assign
+    // them, and only writes the variables, lists and instances it makes, so that the threads can't race.
+    // This one must not change anything until they are done.
+    Interpreter worker() {
+        return new Interpreter(globals.readOnlyGlobals(), out, reporter, new ParallelList.Owner());
+    }
+
+    ParallelList.Owner owner() {
+        return owner;
+    }
+
+    // The VM to run the functions of the given one, which is the same one unless this is a worker
+    VM vm(VM vm) {
+        if (owner == null) {
+            return vm;
+        }
+        if (workerVm == null) {
+            workerVm = vm.worker(this);
         }
+        return workerVm;
     }
 
-    void interpretPrinting(Stmt statement) {
+    Environment globals() {
+        return globals;
+    }
+
+    PrintStream out() {
+        return out;
+    }
+
+    ErrorReporter reporter() {
+        return reporter;
+    }
+
+    // False if it stopped on a runtime error, which was given to the error reporter
+    public boolean execute(CompiledScript script) {
+        return interpret(script.statements());
+    }
+
+    boolean interpret(List<Stmt> statements) {
         try {
-            var statementToExecute = statement instanceof Stmt.Expression expr ? new Stmt.Print(expr.expression) : statement;
-            execute(statementToExecute);
+            for (var statement : statements) {
+                execute(statement);
+            }
+            return true;
         } catch (RuntimeError error) {
-            Lox.runtimeError(error);
+            reporter.runtimeError(error);
+            return false;
         }
     }
 
-    void resolve(Expr expression, int depth) {
-        locals.put(expression, depth);
+    boolean interpretPrinting(Stmt statement) {
+        var statementToExecute = statement instanceof Stmt.Expression expr ? new Stmt.Print(expr.expression) : statement;
+        return interpret(List.of(statementToExecute));
     }
 
-    private void execute(Stmt statement) {
-        statement.accept(this);
+    private Completion execute(Stmt statement) {
+        return statement.accept(this);
     }
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    public Completion visitBlockStmt(Stmt.Block stmt) {
+        if (stmt.flattened) {
+            return executeBlock(stmt.statements, environment);
+        }
+        return executeBlock(stmt.statements, new Environment(environment, stmt.localCount));
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
-        environment.define(stmt.name.lexeme(), null);
-
+    public Completion visitClassStmt(Stmt.Class stmt) {
         var methods = stmt.methods.stream()
-            .collect(Collectors.toMap(m -> m.name.lexeme(), m -> new LoxFunction(m, environment,
+            .collect(Collectors.toMap(m -> m.name.lexeme(), m -> new LoxFunction(m, environment.capture(m.captures, owner),
                 m.name.lexeme().equals("init"))));
 
         var klass = new LoxClass(stmt.name.lexeme(), methods);
-        environment.assign(stmt.name, klass);
-        return null;
+        define(stmt.slot, stmt.name, klass);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
+    public Completion visitExpressionStmt(Stmt.Expression stmt) {
         evaluate(stmt.expression);
-        return null;
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
-        var function = new LoxFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme(), function);
-        return null;
+    public Completion visitFunctionStmt(Stmt.Function stmt) {
+        var function = new LoxFunction(stmt, environment.capture(stmt.captures, owner), false);
+        define(stmt.slot, stmt.name, function);
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
+    public Completion visitIfStmt(Stmt.If stmt) {
         if (isTruthy(evaluate(stmt.condition))) {
-            execute(stmt.thenBranch);
-        } else if (stmt.elseBranch != null) {
-            execute(stmt.elseBranch);
+            return execute(stmt.thenBranch);
         }
-        return null;
+        if (stmt.elseBranch != null) {
+            return execute(stmt.elseBranch);
+        }
+        return Completion.NORMAL;
     }
 
-    private boolean isTruthy(Object value) {
+    static boolean isTruthy(Object value) {
         if (value == null) {
             return false;
         }
@@ -112,39 +179,107 @@ public class Interpreter implements Stmt.Visitor<Void>, Expr.Visitor<Object> {
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
+    public Completion visitPrintStmt(Stmt.Print stmt) {
         var value = evaluate(stmt.expression);
-        System.out.println(stringify(value));
-        return null;
+        out.println(stringify(value));
+        return Completion.NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
-        var value = stmt.value == null ? null : evaluate(stmt.value);
-        throw new ReturnException(value);
+    public Completion visitReturnStmt(Stmt.Return stmt) {
+        returnValue = stmt.value == null ? null : evaluate(stmt.value);
+        return Completion.RETURN;
+    }
+
+    // Clears the value, so that it is not retained after the call has returned
+    Object takeReturnValue() {
+        var value = returnValue;
+        returnValue = null;
+        return value;
+    }
+
+    // Null if the return statement did not end with a tail call
+    LoxFunction.TailCall takeTailCall() {
+        var call = tailCall;
+        tailCall = null;
+        return call;
     }
 
     @Override
-    public Void visitVariableStmt(Stmt.Variable stmt) {
+    public Completion visitVariableStmt(Stmt.Variable stmt) {
         var value = stmt.initializer == null ? null : evaluate(stmt.initializer);
-        environment.define(stmt.name.lexeme(), value);
-        return null;
+        define(stmt.slot, stmt.name, value);
+        return Completion.NORMAL;
+    }
+
+    private void define(int slot, Token name, Object value) {
+        if (slot == -1) {
+            globals.define(name.lexeme(), value);
+        } else {
+            environment.define(slot, value);
+        }
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
+    public Completion visitWhileStmt(Stmt.While stmt) {
+        var countedLoop = stmt.countedLoop;
+        if (countedLoop != null && lookUpVariable(countedLoop.counter()) instanceof Double counter) {
+            return executeCountedLoop(stmt, countedLoop, counter);
+        }
         while (isTruthy(evaluate(stmt.condition))) {
-            try {
-                execute(stmt.body);
-                executeWhileForLoopStepIf(stmt);
-            } catch (BreakException e) {
+            var completion = execute(stmt.body);
+            if (completion == Completion.BREAK) {
                 break;
-            } catch (ContinueException e) {
-                // just continue or if for, execute optional step stmt
-                executeWhileForLoopStepIf(stmt);
             }
+            if (completion == Completion.RETURN) {
+                return completion;
+            }
+            // Normal or continue, in the case of for, execute optional step stmt
+            executeWhileForLoopStepIf(stmt);
         }
-        return null;
+        return Completion.NORMAL;
+    }
+
+    private Completion executeCountedLoop(Stmt.While stmt, CountedLoop loop, double counter) {
+        var invariantLimit = loop.invariantLimit() && loop.limitCallees().stream().allMatch(this::isSize)
+            && loop.bodyCallees().stream().allMatch(this::keepsListSizes);
+        var limit = invariantLimit ? rightNumberOperand(loop.condition()) : 0;
+        var comparison = loop.condition().operator.type();
+        while (true) {
+            if (!invariantLimit) {
+                limit = rightNumberOperand(loop.condition());
+            }
+            var more = switch (comparison) {
+                case LESS -> counter < limit;
+                case LESS_EQUAL -> counter <= limit;
+                case GREATER -> counter > limit;
+                default -> counter >= limit;
+            };
+            if (!more) {
+                return Completion.NORMAL;
+            }
+            var completion = execute(stmt.body);
+            if (completion == Completion.BREAK) {
+                return Completion.NORMAL;
+            }
+            if (completion == Completion.RETURN) {
+                return completion;
+            }
+            counter += loop.step();
+            if (!environment.assignAt(loop.counter().depth, loop.counter().slot, DoubleCache.valueOf(counter), owner)) {
+                throw readOnlyVariableError(loop.counter().name);
+            }
+        }
+    }
+
+    private boolean isSize(Expr.Variable callee) {
+        return globals.getIfDefined(callee.name.lexeme()) == LoxList.SIZE;
+    }
+
+    // Whether the global is one of the natives that run no Lox code and change no list size
+    private boolean keepsListSizes(Expr.Variable callee) {
+        var function = globals.getIfDefined(callee.name.lexeme());
+        return function == CLOCK || function == LoxList.GET || function == LoxList.SET || function == LoxList.SIZE;
     }
 
     private void executeWhileForLoopStepIf(Stmt.While stmt) {
@@ -154,26 +289,33 @@ public class Interpreter implements Stmt.Visitor<Void>, Expr.Visitor<Object> {
     }
 
     @Override
-    public Void visitBreakStmt(Stmt.Break stmt) {
-        throw new BreakException(stmt);
+    public Completion visitBreakStmt(Stmt.Break stmt) {
+        return Completion.BREAK;
     }
 
     @Override
-    public Void visitContinueStmt(Stmt.Continue stmt) {
-        throw new ContinueException(stmt);
+    public Completion visitContinueStmt(Stmt.Continue stmt) {
+        return Completion.CONTINUE;
     }
 
-    void executeBlock(List<Stmt> statements, Environment environment) {
+    // Stops at the first statement that does not complete normally and passes its Completion on
+    Completion executeBlock(List<Stmt> statements, Environment environment) {
         var previous = this.environment;
         try {
             this.environment = environment;
-            statements.forEach(this::execute);
+            for (var statement : statements) {
+                var completion = execute(statement);
+                if (completion != Completion.NORMAL) {
+                    return completion;
+                }
+            }
+            return Completion.NORMAL;
         } finally {
             this.environment = previous;
         }
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if (object == null) {
             return "nil";
         }
@@ -192,24 +334,37 @@ public class Interpreter implements Stmt.Visitor<Void>, Expr.Visitor<Object> {
     public Object visitAssignmentExpr(Expr.Assignment expr) {
         var value = evaluate(expr.value);
 
-        Optional.ofNullable(locals.get(expr))
-            .ifPresentOrElse(
-                distance -> environment.assignAt(distance, expr.name, value),
-                () -> globals.assign(expr.name, value));
+        if (expr.depth == -1) {
+            globals.assign(expr.name, value);
+        } else if (expr.depth == Inliner.ARGUMENT_DEPTH) {
+            inlinedArguments[expr.slot] = value;
+        } else if (!environment.assignAt(expr.depth, expr.slot, value, owner)) {
+            throw readOnlyVariableError(expr.name);
+        }
 
         return value;
     }
 
+    static RuntimeError notOwnedInstanceError(Token name) {
+        var message = "Can't set field '%s' of an instance made outside of a parallel callback".formatted(name.lexeme());
+        return new RuntimeError(name, message);
+    }
+
+    static RuntimeError readOnlyVariableError(Token name) {
+        var message = "Can't assign captured variable '%s' from a parallel callback".formatted(name.lexeme());
+        return new RuntimeError(name, message);
+    }
+
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
-        var left = evaluate(expr.left);
-        var right = evaluate(expr.right);
-
         return switch (expr.operator.type()) {
-            case MINUS -> ensureNumberOperands(expr.operator, left, right, (l, r) -> l - r);
+            case MINUS, SLASH, STAR -> DoubleCache.valueOf(evaluateArithmetic(expr));
+            case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL -> evaluateComparison(expr);
             case PLUS -> {
+                var left = evaluate(expr.left);
+                var right = evaluate(expr.right);
                 if (left instanceof Double dLeft && right instanceof Double dRight) {
-                    yield dLeft + dRight;
+                    yield DoubleCache.valueOf(dLeft + dRight);
                 }
                 if (left instanceof String sLeft && right instanceof String sRight) {
                     yield sLeft + sRight;
@@ -222,36 +377,108 @@ public class Interpreter implements Stmt.Visitor<Void>, Expr.Visitor<Object> {
                 }
                 throw new RuntimeError(expr.operator, "Operands must be two numbers or at least one string");
             }
-            case SLASH -> ensureNumberOperands(expr.operator, left, right, (l, r) -> {
-                if (r == 0) {
+            case BANG_EQUAL -> !isEqual(evaluate(expr.left), evaluate(expr.right));
+            case EQUAL_EQUAL -> isEqual(evaluate(expr.left), evaluate(expr.right));
+            default -> throw notSupportedOperatorException(expr.operator, "Binary");
+        };
+    }
+
+    // Numbers are evaluated without boxing wherever the type of an expression is known to be a number,
+    // which is the case for number literals and results of arithmetic other than +, which also concatenates strings
+    private static boolean isNumberExpression(Expr expr) {
+        if (expr instanceof Expr.Binary binary) {
+            var type = binary.operator.type();
+            return type == TokenType.MINUS || type == TokenType.STAR || type == TokenType.SLASH;
+        }
+        if (expr instanceof Expr.Literal literal) {
+            return literal.value instanceof Double;
+        }
+        if (expr instanceof Expr.Unary unary) {
+            return unary.operator.type() == TokenType.MINUS;
+        }
+        if (expr instanceof Expr.Grouping grouping) {
+            return isNumberExpression(grouping.expression);
+        }
+        return false;
+    }
+
+    // Only for expressions that isNumberExpression() accepts
+    private double evaluateNumber(Expr expr) {
+        if (expr instanceof Expr.Binary binary) {
+            return evaluateArithmetic(binary);
+        }
+        if (expr instanceof Expr.Literal literal) {
+            return (Double) literal.value;
+        }
+        if (expr instanceof Expr.Unary unary) {
+            return -numberOperand(unary);
+        }
+        return evaluateNumber(((Expr.Grouping) expr).expression);
+    }
+
+    private double evaluateArithmetic(Expr.Binary expr) {
+        var left = leftNumberOperand(expr);
+        var right = rightNumberOperand(expr);
+        return switch (expr.operator.type()) {
+            case MINUS -> left - right;
+            case STAR -> left * right;
+            default -> {
+                if (right == 0) {
                     throw new RuntimeError(expr.operator, "Division by zero");
                 }
-                return l / r;
-            });
-            case STAR -> ensureNumberOperands(expr.operator, left, right, (l, r) -> l * r);
-            case GREATER -> ensureNumberOperands(expr.operator, left, right, (l, r) -> l > r);
-            case GREATER_EQUAL -> ensureNumberOperands(expr.operator, left, right, (l, r) -> l >= r);
-            case LESS -> ensureNumberOperands(expr.operator, left, right, (l, r) -> l < r);
-            case LESS_EQUAL -> ensureNumberOperands(expr.operator, left, right, (l, r) -> l <= r);
-            case BANG_EQUAL -> !isEqual(left, right);
-            case EQUAL_EQUAL -> isEqual(left, right);
-            default -> throw notSupportedOperatorException(expr.operator, "Binary");
+                yield left / right;
+            }
         };
     }
 
-    private Object ensureNumberOperands(Token operator, Object left, Object right,
-                                        BiFunction<Double, Double, Object> func) {
-        if (left instanceof Double dLeft && right instanceof Double dRight) {
-            return func.apply(dLeft, dRight);
+    private boolean evaluateComparison(Expr.Binary expr) {
+        var left = leftNumberOperand(expr);
+        var right = rightNumberOperand(expr);
+        return switch (expr.operator.type()) {
+            case GREATER -> left > right;
+            case GREATER_EQUAL -> left >= right;
+            case LESS -> left < right;
+            default -> left <= right;
+        };
+    }
+
+    private double leftNumberOperand(Expr.Binary expr) {
+        if (isNumberExpression(expr.left)) {
+            return evaluateNumber(expr.left);
+        }
+        if (evaluate(expr.left) instanceof Double left) {
+            return left;
+        }
+        // Both operands are always evaluated before their types are checked
+        evaluate(expr.right);
+        throw new RuntimeError(expr.operator, "Operands must be numbers");
+    }
+
+    private double rightNumberOperand(Expr.Binary expr) {
+        if (isNumberExpression(expr.right)) {
+            return evaluateNumber(expr.right);
+        }
+        if (evaluate(expr.right) instanceof Double right) {
+            return right;
         }
-        throw new RuntimeError(operator, "Operands must be numbers");
+        throw new RuntimeError(expr.operator, "Operands must be numbers");
+    }
+
+    private double numberOperand(Expr.Unary expr) {
+        if (isNumberExpression(expr.right)) {
+            return evaluateNumber(expr.right);
+        }
+        if (evaluate(expr.right) instanceof Double right) {
+            return right;
+        }
+        throw new RuntimeError(expr.operator, "Operand must be a number");
     }
 
     private RuntimeError notSupportedOperatorException(Token operator, String expression) {
         return new RuntimeError(operator, "Not supported operator in %s expression".formatted(expression));
     }
 
-    private boolean isEqual(Object a, Object b) {
+    static boolean isEqual(Object a, Object b) {
         if (a == null && b == null) {
             return true;
         }
@@ -263,25 +490,162 @@ public class Interpreter implements Stmt.Visitor<Void>, Expr.Visitor<Object> {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get get) {
+            return callProperty(expr, get);
+        }
+
         var callee = evaluate(expr.callee);
+        var inlined = expr.inlined;
+        if (inlined != null) {
+            if (inlined.guards(callee)) {
+                return callInlined(expr, inlined);
+            }
+            // The global now holds something else
+            expr.inlined = null;
+            expr.calls = 0;
+        } else if (expr.calls != Inliner.NEVER && callee instanceof LoxFunction function
+            && expr.callee instanceof Expr.Variable variable && variable.depth == -1
+            && ++expr.calls >= Inliner.CALLS_BEFORE_INLINING && expr.arguments.size() == function.arity()) {
+            inlined = Inliner.inline(function, expr, variable);
+            if (inlined != null) {
+                expr.inlined = inlined;
+                return callInlined(expr, inlined);
+            }
+            expr.calls = Inliner.NEVER;
+        }
+        return callValue(expr, callee);
+    }
 
-        var arguments = expr.arguments.stream().map(this::evaluate).toList();
+    // Arguments are evaluated as for a call, but the function body is evaluated in place, without any Environment
+    private Object callInlined(Expr.Call expr, Inliner.InlinedCall inlined) {
+        var arguments = evaluateArguments(expr);
+        var enclosingArguments = inlinedArguments;
+        inlinedArguments = arguments;
+        try {
+            return evaluate(inlined.body());
+        } finally {
+            inlinedArguments = enclosingArguments;
+        }
+    }
 
-        if (callee instanceof LoxCallable function) {
-            if (arguments.size() != function.arity()) {
-                throw new RuntimeError(expr.paren, "Expected %d arguments but got %d".formatted(function.arity(), arguments.size()));
+    // instance.method() calls the method directly, without creating a bound one first
+    private Object callProperty(Expr.Call expr, Expr.Get get) {
+        var instance = evaluateInstance(get);
+        var field = PropertyCache.getField(get, instance);
+        if (field != LoxInstance.UNDEFINED) {
+            return callValue(expr, field);
+        }
+
+        var method = PropertyCache.findMethod(get, instance);
+        var arguments = expr.arguments;
+        if (expr.tailCall && method instanceof LoxFunction function) {
+            tailCall = new LoxFunction.TailCall(function, instance, evaluateArguments(expr, function));
+            return null;
+        }
+        switch (arguments.size()) {
+            case 0 -> {
+                checkArity(expr, method);
+                return method.callBound(this, instance);
+            }
+            case 1 -> {
+                var a = evaluate(arguments.get(0));
+                checkArity(expr, method);
+                return method.callBound(this, instance, a);
+            }
+            case 2 -> {
+                var a = evaluate(arguments.get(0));
+                var b = evaluate(arguments.get(1));
+                checkArity(expr, method);
+                return method.callBound(this, instance, a, b);
+            }
+            case 3 -> {
+                var a = evaluate(arguments.get(0));
+                var b = evaluate(arguments.get(1));
+                var c = evaluate(arguments.get(2));
+                checkArity(expr, method);
+                return method.callBound(this, instance, a, b, c);
+            }
+            default -> {
+                return method.callBound(this, instance, Arrays.asList(evaluateArguments(expr, method)));
             }
-            return function.call(this, arguments);
         }
+    }
 
+    // Arguments are evaluated before the callee is checked, up to 3 of them into locals rather than a List
+    private Object callValue(Expr.Call expr, Object callee) {
+        var arguments = expr.arguments;
+        // Only returned to a LoxFunction, which makes the call once the return statement has completed
+        if (expr.tailCall && callee instanceof LoxFunction function) {
+            tailCall = new LoxFunction.TailCall(function, null, evaluateArguments(expr, function));
+            return null;
+        }
+        // Natives raise their errors at the line of the call
+        try {
+            switch (arguments.size()) {
+                case 0 -> {
+                    return callable(expr, callee).call(this);
+                }
+                case 1 -> {
+                    var a = evaluate(arguments.get(0));
+                    return callable(expr, callee).call(this, a);
+                }
+                case 2 -> {
+                    var a = evaluate(arguments.get(0));
+                    var b = evaluate(arguments.get(1));
+                    return callable(expr, callee).call(this, a, b);
+                }
+                case 3 -> {
+                    var a = evaluate(arguments.get(0));
+                    var b = evaluate(arguments.get(1));
+                    var c = evaluate(arguments.get(2));
+                    return callable(expr, callee).call(this, a, b, c);
+                }
+                default -> {
+                    var values = evaluateArguments(expr);
+                    return callable(expr, callee).call(this, Arrays.asList(values));
+                }
+            }
+        } catch (NativeError error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+        }
+    }
+
+    private Object[] evaluateArguments(Expr.Call expr) {
+        var values = new Object[expr.arguments.size()];
+        for (var i = 0; i < values.length; i++) {
+            values[i] = evaluate(expr.arguments.get(i));
+        }
+        return values;
+    }
+
+    private Object[] evaluateArguments(Expr.Call expr, LoxCallable function) {
+        var values = evaluateArguments(expr);
+        checkArity(expr, function);
+        return values;
+    }
+
+    private LoxCallable callable(Expr.Call expr, Object callee) {
+        if (callee instanceof LoxCallable function) {
+            checkArity(expr, function);
+            return function;
+        }
         throw new RuntimeError(expr.paren, "Can only call functions and classes");
     }
 
+    private void checkArity(Expr.Call expr, LoxCallable function) {
+        if (expr.arguments.size() != function.arity()) {
+            throw new RuntimeError(expr.paren, "Expected %d arguments but got %d".formatted(function.arity(), expr.arguments.size()));
+        }
+    }
+
     @Override
     public Object visitGetExpr(Expr.Get expr) {
-        var object = evaluate(expr.object);
-        if (object instanceof LoxInstance instance) {
-            return instance.get(expr.name);
+        return PropertyCache.get(expr, evaluateInstance(expr));
+    }
+
+    private LoxInstance evaluateInstance(Expr.Get expr) {
+        if (evaluate(expr.object) instanceof LoxInstance instance) {
+            return instance;
         }
         throw new RuntimeError(expr.name, "Only instances have properties");
     }
@@ -326,7 +690,10 @@ public class Interpreter implements Stmt.Visitor<Void>, Expr.Visitor<Object> {
 
         if (object instanceof LoxInstance instance) {
             var value = evaluate(expr.value);
-            instance.set(expr.name, value);
+            if (!ParallelList.Owner.canWrite(owner, instance.owner)) {
+                throw notOwnedInstanceError(expr.name);
+            }
+            PropertyCache.set(expr, instance, value);
             return value;
         }
 
@@ -335,78 +702,56 @@ public class Interpreter implements Stmt.Visitor<Void>, Expr.Visitor<Object> {
 
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookUpVariable(expr.keyword, expr);
+        return lookUpVariable(expr.keyword, expr.depth, expr.slot);
     }
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
-        var right = evaluate(expr.right);
         return switch (expr.operator.type()) {
-            case MINUS -> {
-                checkNumberOperand(expr.operator, right);
-                yield -(double) right;
-            }
-            case BANG -> isTruthy(right);
+            case MINUS -> DoubleCache.valueOf(-numberOperand(expr));
+            case BANG -> !isTruthy(evaluate(expr.right));
             default -> throw notSupportedOperatorException(expr.operator, "Unary");
         };
     }
 
-    private void checkNumberOperand(Token operator, Object operand) {
-        if (!(operand instanceof Double)) {
-            throw new RuntimeError(operator, "Operand must be a number");
-        }
-    }
-
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.name, expr);
+        return lookUpVariable(expr);
     }
 
-    private Object lookUpVariable(Token name, Expr expr) {
-        return Optional.ofNullable(locals.get(expr))
-            .map(distance -> environment.getAt(distance, name.lexeme()))
-            .orElseGet(() -> globals.get(name));
+    private Object lookUpVariable(Expr.Variable expr) {
+        return lookUpVariable(expr.name, expr.depth, expr.slot);
+    }
+
+    // Depth of -1 means that the Resolver has not found the variable in any local scope
+    private Object lookUpVariable(Token name, int depth, int slot) {
+        if (depth == -1) {
+            return globals.get(name);
+        }
+        if (depth == Inliner.ARGUMENT_DEPTH) {
+            return inlinedArguments[slot];
+        }
+        return environment.getAt(depth, slot);
     }
 
     @Override
     public Object visitFunctionExpr(Expr.Function expr) {
-        return new LoxFunction(expr, environment, false);
+        return new LoxFunction(expr, environment.capture(expr.captures, owner), false);
     }
 
     @Override
     public Object visitLoxListExpr(Expr.LoxList expr) {
         var elements = expr.elements.stream().map(this::evaluate).toList();
-        return new LoxList(elements);
+        return new LoxList(elements, owner);
     }
 
     private Object evaluate(Expr expr) {
         return expr.accept(this);
     }
 
-    static class BreakException extends RuntimeException {
-        final Stmt.Break breakStmt;
-
-        BreakException(Stmt.Break breakStmt) {
-            super(null, null, false, false);
-            this.breakStmt = breakStmt;
-        }
-    }
-
-    static class ContinueException extends RuntimeException {
-        final Stmt.Continue continueStmt;
-
-        ContinueException(Stmt.Continue breakStmt) {
-            super(null, null, false, false);
-            this.continueStmt = breakStmt;
-        }
-    }
-
-    static class ReturnException extends RuntimeException {
-        final Object value;
-
-        ReturnException(Object value) {
-            super(null, null, false, false);
-            this.value = value;
-        }
+    // How a statement has completed; anything but NORMAL skips the rest of the enclosing statements,
+    // until a loop (BREAK, CONTINUE) or a function call (RETURN) handles it
+    enum Completion {
+        NORMAL, BREAK, CONTINUE, RETURN
     }
 }
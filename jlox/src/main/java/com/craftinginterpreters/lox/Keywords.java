@@ -0,0 +1,89 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashSet;
+import java.util.Map;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+import static java.util.Map.entry;
+
+// Keywords looked up through a perfect hash of their first character, last character and length,
+// then compared with the characters of the scanner window, so no String is created to find out.
+final class Keywords {
+
+    private static final Map<String, TokenType> KEYWORDS = Map.ofEntries(
+        entry("and", AND),
+        entry("class", CLASS),
+        entry("else", ELSE),
+        entry("false", FALSE),
+        entry("for", FOR),
+        entry("fun", FUN),
+        entry("if", IF),
+        entry("nil", NIL),
+        entry("or", OR),
+        entry("print", PRINT),
+        entry("return", RETURN),
+        entry("super", SUPER),
+        entry("this", THIS),
+        entry("true", TRUE),
+        entry("var", VAR),
+        entry("while", WHILE),
+        entry("break", BREAK),
+        entry("continue", CONTINUE)
+    );
+    private static final int TABLE_SIZE = 64;
+    // Smallest multiplier for which no two keywords hash the same
+    private static final int SEED = findSeed();
+    private static final String[] NAMES = new String[TABLE_SIZE];
+    private static final TokenType[] TYPES = new TokenType[TABLE_SIZE];
+
+    static {
+        KEYWORDS.forEach((name, type) -> {
+            var index = index(name.charAt(0), name.charAt(name.length() - 1), name.length(), SEED);
+            NAMES[index] = name;
+            TYPES[index] = type;
+        });
+    }
+
+    private Keywords() {
+    }
+
+    // Index of the keyword in chars[start, start + length), -1 if it is not one
+    static int find(char[] chars, int start, int length) {
+        var index = index(chars[start], chars[start + length - 1], length, SEED);
+        var name = NAMES[index];
+        if (name == null || name.length() != length) {
+            return -1;
+        }
+        for (var i = 1; i < length - 1; i++) {
+            if (name.charAt(i) != chars[start + i]) {
+                return -1;
+            }
+        }
+        // First and last characters were part of the hash, but they must match too
+        return name.charAt(0) == chars[start] && name.charAt(length - 1) == chars[start + length - 1] ? index : -1;
+    }
+
+    static String name(int index) {
+        return NAMES[index];
+    }
+
+    static TokenType type(int index) {
+        return TYPES[index];
+    }
+
+    private static int index(char first, char last, int length, int seed) {
+        return ((first * seed + last) * 31 + length) & (TABLE_SIZE - 1);
+    }
+
+    private static int findSeed() {
+        for (var seed = 1; ; seed++) {
+            var indexes = new HashSet<Integer>();
+            for (var name : KEYWORDS.keySet()) {
+                indexes.add(index(name.charAt(0), name.charAt(name.length() - 1), name.length(), seed));
+            }
+            if (indexes.size() == KEYWORDS.size()) {
+                return seed;
+            }
+        }
+    }
+}
@@ -3,17 +3,23 @@ package com.craftinginterpreters.lox;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
 
+// Command line entry point, itself a client of the embedding API (CompiledScript and Interpreter).
 public class Lox {
 
-    private static final Interpreter interpreter = new Interpreter();
     private static final boolean debugMode = Boolean.parseBoolean(getEnvOrDefault("LOX_DEBUG_MODE", "false"));
-    private static boolean hadError = false;
-    private static boolean hadRuntimeError = false;
+    // tree (the reference, tree-walking Interpreter) or vm (bytecode VM)
+    private static final boolean vmEngine = getEnvOrDefault("LOX_ENGINE", "tree").equals("vm");
+    // Parse the top-level declarations of script files in parallel, for big generated programs
+    private static final boolean parallelParsing = Boolean.parseBoolean(getEnvOrDefault("LOX_PARALLEL_PARSE", "false"));
 
     static String getEnvOrDefault(String key, String defaultValue) {
         return Optional.ofNullable(System.getenv(key)).orElse(defaultValue);
@@ -30,43 +36,31 @@ public class Lox {
         }
     }
 
-    private static void runFile(String path) throws IOException {
-        var source = Files.readString(Paths.get(path));
-        run(source, false);
-        if (hadError) {
-            System.exit(65);
-        }
-        if (hadRuntimeError) {
-            System.exit(70);
+    private static void runFile(String file) throws IOException {
+        var path = Paths.get(file);
+        var cacheEntry = debugMode ? Optional.<ScriptCache.Entry>empty()
+            : ScriptCache.fromEnvironment().flatMap(cache -> cache.entry(path));
+        var script = cacheEntry.flatMap(ScriptCache.Entry::load);
+        if (script.isEmpty()) {
+            script = compile(path);
+            script.ifPresent(s -> cacheEntry.ifPresent(entry -> entry.store(s)));
         }
-    }
-
-    private static void run(String source, boolean repl) {
-        var scanner = new Scanner(source);
-        var tokens = scanner.scanTokens();
-        var parser = new Parser(tokens);
-        var statements = parser.parse();
-        if (debugMode) {
-            printParsedStatements(statements);
+        if (script.isEmpty()) {
+            System.exit(65);
         }
 
-        // Stop if there was a syntax error
-        if (hadError) return;
-
-        var resolver = new Resolver(interpreter);
-        resolver.resolve(statements);
-        if (hadError) return;
-
-        if (repl && statements.size() == 1) {
-            interpreter.interpretPrinting(statements.getFirst());
-        } else {
-            interpreter.interpret(statements);
+        var interpreter = new Interpreter();
+        var completed = vmEngine ? new VM(interpreter).execute(script.get()) : interpreter.execute(script.get());
+        if (!completed) {
+            System.exit(70);
         }
     }
 
     private static void runPrompt() throws IOException {
         var input = new InputStreamReader(System.in);
         var reader = new BufferedReader(input);
+        var interpreter = new Interpreter();
+        var vm = new VM(interpreter);
 
         while (true) {
             System.out.println("jlox> ");
@@ -74,31 +68,42 @@ public class Lox {
             if (line == null) {
                 break;
             }
-            run(line, true);
-            hadError = false;
+            compile(new StringReader(line)).ifPresent(script -> {
+                var statements = script.statements();
+                if (statements.size() != 1) {
+                    if (vmEngine) {
+                        vm.interpret(statements);
+                    } else {
+                        interpreter.interpret(statements);
+                    }
+                } else if (vmEngine) {
+                    vm.interpretPrinting(statements.getFirst());
+                } else {
+                    interpreter.interpretPrinting(statements.getFirst());
+                }
+            });
         }
     }
 
-    static void error(int line, String message) {
-        report(line, "", message);
+    private static Optional<CompiledScript> compile(Path file) throws IOException {
+        if (parallelParsing) {
+            var errors = ErrorReporter.printingTo(System.err);
+            return printingParsedStatements(CompiledScript.compile(Files.readString(file), errors, ForkJoinPool.commonPool()));
+        }
+        try (var reader = Files.newBufferedReader(file)) {
+            return compile(reader);
+        }
     }
 
-    private static void report(int line, String where, String message) {
-        System.err.println("[line " + line + "] Error" + where + ": " + message);
-        hadError = true;
+    private static Optional<CompiledScript> compile(Reader source) {
+        return printingParsedStatements(CompiledScript.compile(source, ErrorReporter.printingTo(System.err)));
     }
 
-    static void error(Token token, String message) {
-        if (token.type() == TokenType.EOF) {
-            report(token.line(), " at end ", message);
-        } else {
-            report(token.line(), " at '%s'".formatted(token.lexeme()), message);
+    private static Optional<CompiledScript> printingParsedStatements(Optional<CompiledScript> script) {
+        if (debugMode) {
+            script.ifPresent(s -> printParsedStatements(s.statements()));
         }
-    }
-
-    static void runtimeError(RuntimeError error) {
-        System.err.printf("%s\n[line %d ]%n", error.getMessage(), error.line);
-        hadRuntimeError = true;
+        return script;
     }
 
     static void printParsedStatements(List<Stmt> statements) {
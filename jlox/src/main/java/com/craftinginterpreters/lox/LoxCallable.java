@@ -1,5 +1,6 @@
 package com.craftinginterpreters.lox;
 
+import java.util.Arrays;
 import java.util.List;
 
 public interface LoxCallable {
@@ -7,4 +8,22 @@ public interface LoxCallable {
     int arity();
 
     Object call(Interpreter interpreter, List<Object> arguments);
+
+    // Calls of up to 3 arguments, which the Interpreter makes without building a List;
+    // callables override those they can run on the arguments as they are
+    default Object call(Interpreter interpreter) {
+        return call(interpreter, List.of());
+    }
+
+    default Object call(Interpreter interpreter, Object a) {
+        return call(interpreter, Arrays.asList(a));
+    }
+
+    default Object call(Interpreter interpreter, Object a, Object b) {
+        return call(interpreter, Arrays.asList(a, b));
+    }
+
+    default Object call(Interpreter interpreter, Object a, Object b, Object c) {
+        return call(interpreter, Arrays.asList(a, b, c));
+    }
 }
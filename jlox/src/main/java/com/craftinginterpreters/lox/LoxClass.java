@@ -7,30 +7,33 @@ import java.util.Optional;
 public class LoxClass implements LoxCallable {
 
     final String name;
-    private final Map<String, LoxFunction> methods;
+    final Shape rootShape = new Shape(this);
+    // Number of fields instances ended up with so far, to size the values of new ones
+    int fieldsHint = 0;
+    private final Map<String, ? extends LoxMethod> methods;
 
-    LoxClass(String name, Map<String, LoxFunction> methods) {
+    LoxClass(String name, Map<String, ? extends LoxMethod> methods) {
         this.name = name;
         this.methods = methods;
     }
 
     @Override
     public int arity() {
-        return findInitializer().map(LoxFunction::arity).orElse(0);
+        return findInitializer().map(LoxMethod::arity).orElse(0);
     }
 
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        var instance = new LoxInstance(this);
-        findInitializer().ifPresent(init -> init.bind(instance).call(interpreter, arguments));
+        var instance = new LoxInstance(this, interpreter.owner());
+        findInitializer().ifPresent(init -> init.callBound(interpreter, instance, arguments));
         return instance;
     }
 
-    private Optional<LoxFunction> findInitializer() {
+    private Optional<LoxMethod> findInitializer() {
         return Optional.ofNullable(findMethod("init"));
     }
 
-    LoxFunction findMethod(String name) {
+    LoxMethod findMethod(String name) {
         return methods.get(name);
     }
 
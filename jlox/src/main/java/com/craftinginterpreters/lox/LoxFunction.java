@@ -1,30 +1,32 @@
 package com.craftinginterpreters.lox;
 
 import java.util.List;
-import java.util.stream.IntStream;
 
-public class LoxFunction implements LoxCallable {
+public class LoxFunction implements LoxMethod {
 
     private final List<Token> params;
     private final List<Stmt> body;
     private final String name;
+    private final int localCount;
     private final Environment closure;
     private final boolean initializer;
 
-    LoxFunction(List<Token> params, List<Stmt> body, String name, Environment closure, boolean initializer) {
+    LoxFunction(List<Token> params, List<Stmt> body, String name, int localCount, Environment closure,
+                boolean initializer) {
         this.params = params;
         this.body = body;
         this.name = name;
+        this.localCount = localCount;
         this.closure = closure;
         this.initializer = initializer;
     }
 
     LoxFunction(Stmt.Function function, Environment closure, boolean initializer) {
-        this(function.params, function.body, function.name.lexeme(), closure, initializer);
+        this(function.params, function.body, function.name.lexeme(), function.localCount, closure, initializer);
     }
 
     LoxFunction(Expr.Function function, Environment closure, boolean initializer) {
-        this(function.params, function.body, "anonymous", closure, initializer);
+        this(function.params, function.body, "anonymous", function.localCount, closure, initializer);
     }
 
     @Override
@@ -32,40 +34,144 @@ public class LoxFunction implements LoxCallable {
         return params.size();
     }
 
+    // Frames are sized from the local count of the Resolver, parameters taking the first slots
     @Override
     public Object call(Interpreter interpreter, List<Object> arguments) {
-        var env = new Environment(closure);
-
-        IntStream.range(0, arity())
-            .forEach(i -> {
-                var paramName = params.get(i).lexeme();
-                var paramValue = arguments.get(i);
-                env.define(paramName, paramValue);
-            });
-
-        try {
-            interpreter.executeBlock(body, env);
-            return initializer ? thisFromClosure() : null;
-        } catch (Interpreter.ReturnException e) {
-            if (initializer) {
-                return thisFromClosure();
+        var frame = new Environment(closure, localCount);
+        for (var i = 0; i < arguments.size(); i++) {
+            frame.define(i, arguments.get(i));
+        }
+        return run(interpreter, frame);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter) {
+        return run(interpreter, new Environment(closure, localCount));
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object a) {
+        var frame = new Environment(closure, localCount);
+        frame.define(0, a);
+        return run(interpreter, frame);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object a, Object b) {
+        var frame = new Environment(closure, localCount);
+        frame.define(0, a);
+        frame.define(1, b);
+        return run(interpreter, frame);
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object a, Object b, Object c) {
+        var frame = new Environment(closure, localCount);
+        frame.define(0, a);
+        frame.define(1, b);
+        frame.define(2, c);
+        return run(interpreter, frame);
+    }
+
+    @Override
+    public Object callBound(Interpreter interpreter, LoxInstance instance, List<Object> arguments) {
+        var frame = new Environment(thisEnvironment(instance), localCount);
+        for (var i = 0; i < arguments.size(); i++) {
+            frame.define(i, arguments.get(i));
+        }
+        return run(interpreter, frame);
+    }
+
+    @Override
+    public Object callBound(Interpreter interpreter, LoxInstance instance) {
+        return run(interpreter, new Environment(thisEnvironment(instance), localCount));
+    }
+
+    @Override
+    public Object callBound(Interpreter interpreter, LoxInstance instance, Object a) {
+        var frame = new Environment(thisEnvironment(instance), localCount);
+        frame.define(0, a);
+        return run(interpreter, frame);
+    }
+
+    @Override
+    public Object callBound(Interpreter interpreter, LoxInstance instance, Object a, Object b) {
+        var frame = new Environment(thisEnvironment(instance), localCount);
+        frame.define(0, a);
+        frame.define(1, b);
+        return run(interpreter, frame);
+    }
+
+    @Override
+    public Object callBound(Interpreter interpreter, LoxInstance instance, Object a, Object b, Object c) {
+        var frame = new Environment(thisEnvironment(instance), localCount);
+        frame.define(0, a);
+        frame.define(1, b);
+        frame.define(2, c);
+        return run(interpreter, frame);
+    }
+
+    // Tail calls are made here, in a loop, once the call that returns them has completed,
+    // so that tail recursion runs in constant Java stack
+    private Object run(Interpreter interpreter, Environment frame) {
+        var function = this;
+        var completion = interpreter.executeBlock(body, frame);
+        for (var tailCall = interpreter.takeTailCall(); tailCall != null; tailCall = interpreter.takeTailCall()) {
+            function = tailCall.function();
+            var closure = tailCall.instance() == null ? function.closure : function.thisEnvironment(tailCall.instance());
+            frame = new Environment(closure, function.localCount);
+            var arguments = tailCall.arguments();
+            for (var i = 0; i < arguments.length; i++) {
+                frame.define(i, arguments[i]);
+            }
+            completion = interpreter.executeBlock(function.body, frame);
+        }
+
+        if (function.initializer) {
+            if (completion == Interpreter.Completion.RETURN) {
+                interpreter.takeReturnValue();
             }
-            return e.value;
+            // 'this', from the environment enclosing the frame
+            return frame.getAt(1, 0);
+        }
+        return completion == Interpreter.Completion.RETURN ? interpreter.takeReturnValue() : null;
+    }
+
+    // The expression returned, when that is all the body does
+    Expr returnedExpression() {
+        if (!initializer && body.size() == 1 && body.getFirst() instanceof Stmt.Return statement) {
+            return statement.value;
         }
+        return null;
     }
 
-    private Object thisFromClosure() {
-        return closure.getAt(0, "this");
+    String name() {
+        return name;
     }
 
-    LoxFunction bind(LoxInstance instance) {
-        var environment = new Environment(closure);
-        environment.define("this", instance);
-        return new LoxFunction(params, body, name, environment, initializer);
+    // Shared by the functions made from the same declaration
+    List<Stmt> body() {
+        return body;
+    }
+
+    @Override
+    public LoxFunction bind(LoxInstance instance) {
+        return new LoxFunction(params, body, name, localCount, thisEnvironment(instance), initializer);
+    }
+
+    // Matches the scope with 'this' that the Resolver creates for every class
+    private Environment thisEnvironment(LoxInstance instance) {
+        var environment = new Environment(closure, 1);
+        environment.define(0, instance);
+        return environment;
     }
 
     @Override
     public String toString() {
         return "<fn %s>".formatted(name);
     }
+
+    // Call of a function returned by another one, the instance being the one to bind it to, if any
+    record TailCall(LoxFunction function, LoxInstance instance, Object[] arguments) {
+    }
 }
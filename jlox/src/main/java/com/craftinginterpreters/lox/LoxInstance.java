@@ -1,15 +1,24 @@
 package com.craftinginterpreters.lox;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Optional;
+import java.util.Arrays;
 
+// Fields are kept in a flat array, laid out by the instance Shape.
 public class LoxInstance {
-    private final LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    // Marks a missing field, since nil is a valid value of one
+    static final Object UNDEFINED = new Object();
+    private static final Object[] NO_VALUES = new Object[0];
 
-    LoxInstance(LoxClass klass) {
+    final LoxClass klass;
+    // Worker that made it, if any (see ParallelList)
+    final ParallelList.Owner owner;
+    private Shape shape;
+    private Object[] values;
+
+    LoxInstance(LoxClass klass, ParallelList.Owner owner) {
         this.klass = klass;
+        this.owner = owner;
+        this.shape = klass.rootShape;
+        this.values = klass.fieldsHint == 0 ? NO_VALUES : new Object[klass.fieldsHint];
     }
 
     @Override
@@ -17,14 +26,29 @@ public class LoxInstance {
         return klass.name + " instance";
     }
 
-    Object get(Token name) {
-        return Optional.ofNullable(fields.get(name.lexeme()))
-            .or(() -> Optional.ofNullable(klass.findMethod(name.lexeme()))
-                .map(m -> m.bind(this)))
-            .orElseThrow(() -> new RuntimeError(name, "Undefined property '%s'".formatted(name.lexeme())));
+    Shape shape() {
+        return shape;
+    }
+
+    Object get(int slot) {
+        return values[slot];
+    }
+
+    void set(int slot, Object value) {
+        values[slot] = value;
     }
 
-    void set(Token name, Object value) {
-        fields.put(name.lexeme(), value);
+    // The new shape must be the transition of the current one adding the field
+    void addField(Shape newShape, Object value) {
+        var slot = shape.size();
+        if (slot == values.length) {
+            values = Arrays.copyOf(values, Math.max(4, slot * 2));
+        }
+        values[slot] = value;
+        shape = newShape;
+        // Later instances of the class start with room for as many fields
+        if (klass.fieldsHint <= slot) {
+            klass.fieldsHint = slot + 1;
+        }
     }
 }
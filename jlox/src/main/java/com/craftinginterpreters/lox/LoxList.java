@@ -1,108 +1,483 @@
 package com.craftinginterpreters.lox;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Objects;
+import java.util.StringJoiner;
 
+// Lists of numbers only are packed in a double[], unboxed, until anything else is stored in them:
+// their elements then move to an Object[] for good, like the element kinds of JavaScript engines.
+// Numbers are boxed only when read, and small integral ones come from the DoubleCache then.
 public class LoxList {
 
-    private final List<Object> elements;
+    private static final int MIN_CAPACITY = 8;
 
-    LoxList(List<Object> elements) {
-        this.elements = new ArrayList<>(elements);
+    // Null once the list has held anything but numbers
+    private double[] numbers;
+    // Null as long as the list has only held numbers
+    private Object[] elements;
+    private int size;
+    // Worker that made it, if any (see ParallelList)
+    private final ParallelList.Owner owner;
+
+    LoxList(ParallelList.Owner owner) {
+        this(new double[MIN_CAPACITY], null, 0, owner);
+    }
+
+    private LoxList(double[] numbers, Object[] elements, int size, ParallelList.Owner owner) {
+        this.numbers = numbers;
+        this.elements = elements;
+        this.size = size;
+        this.owner = owner;
+    }
+
+    LoxList(List<Object> elements, ParallelList.Owner owner) {
+        this.owner = owner;
+        size = elements.size();
+        if (elements.stream().allMatch(element -> element instanceof Double)) {
+            numbers = new double[Math.max(size, MIN_CAPACITY)];
+            for (var i = 0; i < size; i++) {
+                numbers[i] = (Double) elements.get(i);
+            }
+        } else {
+            this.elements = elements.toArray(new Object[Math.max(size, MIN_CAPACITY)]);
+        }
     }
 
     Object get(int idx) {
-        return elements.get(idx);
+        Objects.checkIndex(idx, size);
+        return numbers != null ? DoubleCache.valueOf(numbers[idx]) : elements[idx];
     }
 
+    // Returns the previous element
     Object set(int idx, Object element) {
-        return elements.set(idx, element);
+        Objects.checkIndex(idx, size);
+        if (numbers != null) {
+            var previous = numbers[idx];
+            if (element instanceof Double number) {
+                numbers[idx] = number;
+                return DoubleCache.valueOf(previous);
+            }
+            unpack();
+        }
+        var previous = elements[idx];
+        elements[idx] = element;
+        return previous;
     }
 
     void add(Object element) {
-        elements.add(element);
+        if (numbers != null) {
+            if (element instanceof Double number) {
+                if (size == numbers.length) {
+                    numbers = Arrays.copyOf(numbers, size * 2);
+                }
+                numbers[size++] = number;
+                return;
+            }
+            unpack();
+        }
+        if (size == elements.length) {
+            elements = Arrays.copyOf(elements, size * 2);
+        }
+        elements[size++] = element;
     }
 
     void delete(int idx) {
-        elements.remove(idx);
+        Objects.checkIndex(idx, size);
+        var array = numbers != null ? (Object) numbers : elements;
+        System.arraycopy(array, idx + 1, array, idx, size - idx - 1);
+        size--;
+        if (elements != null) {
+            elements[size] = null;
+        }
     }
 
     int size() {
-        return elements.size();
+        return size;
     }
 
-    @Override
-    public String toString() {
-        return elements.toString();
+    ParallelList.Owner owner() {
+        return owner;
     }
 
-    static void defineFunctions(Environment globals) {
-        globals.define("get", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 2;
-            }
+    // Bulk operations read the size and elements again after every call back, which may change the list.
+    // Their results are new lists, packed as long as they only hold numbers.
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                // TODO: validate types!
-                var list = (LoxList) arguments.getFirst();
-                var idx = (Number) arguments.getLast();
-                return list.get(idx.intValue());
-            }
-        });
+    LoxList map(Interpreter interpreter, LoxCallable function) {
+        var mapped = new LoxList(interpreter.owner());
+        for (var i = 0; i < size; i++) {
+            mapped.add(function.call(interpreter, get(i)));
+        }
+        return mapped;
+    }
 
-        globals.define("set", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 3;
+    LoxList filter(Interpreter interpreter, LoxCallable predicate) {
+        var filtered = new LoxList(interpreter.owner());
+        for (var i = 0; i < size; i++) {
+            var element = get(i);
+            if (Interpreter.isTruthy(predicate.call(interpreter, element))) {
+                filtered.add(element);
             }
+        }
+        return filtered;
+    }
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                var listIdx = ensureListAndIdx(arguments);
-                var element = arguments.getLast();
-                return listIdx.list.set(listIdx.number, element);
-            }
-        });
+    Object reduce(Interpreter interpreter, LoxCallable function, Object initial) {
+        var accumulator = initial;
+        for (var i = 0; i < size; i++) {
+            accumulator = function.call(interpreter, accumulator, get(i));
+        }
+        return accumulator;
+    }
 
-        globals.define("add", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 2;
-            }
+    // In place and stable, the comparator returning a negative number, zero or a positive number
+    void sort(Interpreter interpreter, LoxCallable comparator) {
+        var sorted = new Object[size];
+        for (var i = 0; i < size; i++) {
+            sorted[i] = get(i);
+        }
+        try {
+            Arrays.sort(sorted, (a, b) -> {
+                var order = comparator.call(interpreter, a, b);
+                if (!(order instanceof Double number)) {
+                    throw NativeError.expected("sort", "a number from its comparator", order);
+                }
+                return (int) Math.signum(number);
+            });
+        } catch (IllegalArgumentException e) {
+            // Thrown by the sort when it finds out that the order is not consistent, the list being left as it was
+            throw new NativeError("'sort' comparator is not consistent, ordering a before b and b before a");
+        }
+        for (var i = 0; i < Math.min(size, sorted.length); i++) {
+            set(i, sorted[i]);
+        }
+    }
+
+    LoxList slice(int from, int to, ParallelList.Owner owner) {
+        Objects.checkFromToIndex(from, to, size);
+        return copy(from, to, to - from, owner);
+    }
+
+    LoxList concat(LoxList other, ParallelList.Owner owner) {
+        var concatenated = copy(0, size, size + other.size, owner);
+        concatenated.addAll(other);
+        return concatenated;
+    }
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                ensureList(arguments).add(arguments.getLast());
-                return null;
+    void addAll(LoxList other) {
+        var count = other.size;
+        if (numbers != null && other.numbers != null) {
+            if (size + count > numbers.length) {
+                numbers = Arrays.copyOf(numbers, Math.max(numbers.length * 2, size + count));
             }
-        });
+            System.arraycopy(other.numbers, 0, numbers, size, count);
+            size += count;
+            return;
+        }
+        for (var i = 0; i < count; i++) {
+            add(other.get(i));
+        }
+    }
 
-        globals.define("size", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 1;
+    // Compares as ==, -1 if no element is equal
+    int indexOf(Object value) {
+        if (numbers != null) {
+            if (value instanceof Double number) {
+                for (var i = 0; i < size; i++) {
+                    // Same as Double.equals(), NaN being equal to itself
+                    if (Double.compare(numbers[i], number) == 0) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+        for (var i = 0; i < size; i++) {
+            if (Interpreter.isEqual(elements[i], value)) {
+                return i;
             }
+        }
+        return -1;
+    }
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double) ensureList(arguments).size();
+    void fill(Object value) {
+        if (numbers != null) {
+            if (value instanceof Double number) {
+                Arrays.fill(numbers, 0, size, number);
+                return;
             }
-        });
+            unpack();
+        }
+        Arrays.fill(elements, 0, size, value);
     }
 
-    private static ListAndNumber ensureListAndIdx(List<Object> arguments) {
-        // TODO: validate types!
-        var list = ensureList(arguments);
-        var idx = (Number) arguments.get(1);
-        return new ListAndNumber(list, idx.intValue());
+    // Elements from 'from' to 'to', in a list of at least that capacity
+    private LoxList copy(int from, int to, int capacity, ParallelList.Owner owner) {
+        capacity = Math.max(capacity, MIN_CAPACITY);
+        if (numbers != null) {
+            return new LoxList(Arrays.copyOfRange(numbers, from, from + capacity), null, to - from, owner);
+        }
+        var copied = new Object[capacity];
+        System.arraycopy(elements, from, copied, 0, to - from);
+        return new LoxList(null, copied, to - from, owner);
     }
 
-    private static LoxList ensureList(List<Object> arguments) {
-        return (LoxList) arguments.getFirst();
+    // Moves the elements to an Object[], for good
+    private void unpack() {
+        elements = new Object[numbers.length];
+        for (var i = 0; i < size; i++) {
+            elements[i] = DoubleCache.valueOf(numbers[i]);
+        }
+        numbers = null;
     }
 
-    private record ListAndNumber(LoxList list, int number) {
+    // Same as ArrayList.toString(), which lists used to be
+    @Override
+    public String toString() {
+        var text = new StringJoiner(", ", "[", "]");
+        for (var i = 0; i < size; i++) {
+            if (numbers != null) {
+                text.add(Double.toString(numbers[i]));
+            } else {
+                text.add(String.valueOf(elements[i]));
+            }
+        }
+        return text.toString();
+    }
+
+    // Natives are stateless, hence shared by all Interpreters. They check their arguments, raising NativeErrors.
+    // They run on their fixed arity calls, calls with a List of arguments (from the VM) ending up there too.
+    static final LoxCallable GET = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.get(0), arguments.get(1));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list, Object idx) {
+            var elements = NativeError.list("get", list);
+            return elements.get(NativeError.index("get", idx, elements));
+        }
+    };
+
+    static final LoxCallable SET = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 3;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.get(0), arguments.get(1), arguments.get(2));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list, Object idx, Object element) {
+            var elements = NativeError.writableList("set", list, interpreter);
+            return elements.set(NativeError.index("set", idx, elements), element);
+        }
+    };
+
+    static final LoxCallable ADD = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.get(0), arguments.get(1));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list, Object element) {
+            NativeError.writableList("add", list, interpreter).add(element);
+            return null;
+        }
+    };
+
+    static final LoxCallable SIZE = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 1;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.getFirst());
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list) {
+            return (double) NativeError.list("size", list).size();
+        }
+    };
+
+    // Functions are called back on their fixed arity calls, without any List of arguments
+    static final LoxCallable MAP = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.get(0), arguments.get(1));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list, Object function) {
+            return NativeError.list("map", list).map(interpreter, NativeError.callable("map", function));
+        }
+    };
+
+    static final LoxCallable FILTER = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.get(0), arguments.get(1));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list, Object predicate) {
+            return NativeError.list("filter", list).filter(interpreter, NativeError.callable("filter", predicate));
+        }
+    };
+
+    static final LoxCallable REDUCE = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 3;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.get(0), arguments.get(1), arguments.get(2));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list, Object function, Object initial) {
+            var callback = NativeError.callable("reduce", function);
+            return NativeError.list("reduce", list).reduce(interpreter, callback, initial);
+        }
+    };
+
+    static final LoxCallable SORT = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.get(0), arguments.get(1));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list, Object comparator) {
+            var elements = NativeError.writableList("sort", list, interpreter);
+            elements.sort(interpreter, NativeError.callable("sort", comparator));
+            return null;
+        }
+    };
+
+    static final LoxCallable SLICE = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 3;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.get(0), arguments.get(1), arguments.get(2));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list, Object from, Object to) {
+            var elements = NativeError.list("slice", list);
+            var start = (int) NativeError.number("slice", from);
+            var end = (int) NativeError.number("slice", to);
+            if (start < 0 || start > end || end > elements.size()) {
+                throw NativeError.outOfBounds("slice", "range [%d, %d)".formatted(start, end), elements);
+            }
+            return elements.slice(start, end, interpreter.owner());
+        }
+    };
+
+    static final LoxCallable CONCAT = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.get(0), arguments.get(1));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list, Object other) {
+            var first = NativeError.list("concat", list);
+            return first.concat(NativeError.list("concat", other), interpreter.owner());
+        }
+    };
+
+    static final LoxCallable INDEX_OF = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.get(0), arguments.get(1));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list, Object value) {
+            return (double) NativeError.list("indexOf", list).indexOf(value);
+        }
+    };
+
+    static final LoxCallable FILL = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.get(0), arguments.get(1));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list, Object value) {
+            NativeError.writableList("fill", list, interpreter).fill(value);
+            return null;
+        }
+    };
+
+    static void defineFunctions(Environment globals) {
+        globals.define("get", GET);
+        globals.define("set", SET);
+        globals.define("add", ADD);
+        globals.define("size", SIZE);
+        globals.define("map", MAP);
+        globals.define("filter", FILTER);
+        globals.define("reduce", REDUCE);
+        globals.define("sort", SORT);
+        globals.define("slice", SLICE);
+        globals.define("concat", CONCAT);
+        globals.define("indexOf", INDEX_OF);
+        globals.define("fill", FILL);
     }
 }
@@ -0,0 +1,32 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Function that can be stored in a LoxClass and bound to its instances, whatever engine executes it
+public interface LoxMethod extends LoxCallable {
+
+    LoxMethod bind(LoxInstance instance);
+
+    // For calls like instance.method(), where the bound method would not outlive the call
+    default Object callBound(Interpreter interpreter, LoxInstance instance, List<Object> arguments) {
+        return bind(instance).call(interpreter, arguments);
+    }
+
+    // Same as the fixed arity calls of LoxCallable
+    default Object callBound(Interpreter interpreter, LoxInstance instance) {
+        return callBound(interpreter, instance, List.of());
+    }
+
+    default Object callBound(Interpreter interpreter, LoxInstance instance, Object a) {
+        return callBound(interpreter, instance, Arrays.asList(a));
+    }
+
+    default Object callBound(Interpreter interpreter, LoxInstance instance, Object a, Object b) {
+        return callBound(interpreter, instance, Arrays.asList(a, b));
+    }
+
+    default Object callBound(Interpreter interpreter, LoxInstance instance, Object a, Object b, Object c) {
+        return callBound(interpreter, instance, Arrays.asList(a, b, c));
+    }
+}
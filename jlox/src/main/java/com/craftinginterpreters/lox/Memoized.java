@@ -0,0 +1,97 @@
+package com.craftinginterpreters.lox;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Function whose results are cached by arguments, for pure functions only: `fib = memo(fib, 1000);`.
+// Arguments are compared by value for numbers, strings, booleans and nil, by identity for anything else.
+// The cache keeps the most recently used results, up to its maximum number of entries.
+// Being a plain LoxCallable, it works for any function of any engine, and is never called as a tail call,
+// so that recursive calls through the same global name do go through the cache.
+final class Memoized implements LoxCallable {
+
+    static final LoxCallable MEMO = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            var function = NativeError.callable("memo", arguments.getFirst());
+            var maxEntries = NativeError.number("memo", arguments.getLast());
+            return new Memoized(function, Math.max(1, (int) maxEntries));
+        }
+    };
+
+    // [hits, misses, entries], to tune the maximum number of entries
+    static final LoxCallable MEMO_STATS = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 1;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            if (arguments.getFirst() instanceof Memoized memoized) {
+                return memoized.stats(interpreter.owner());
+            }
+            throw NativeError.expected("memoStats", "a memoized function", arguments.getFirst());
+        }
+    };
+
+    private final LoxCallable function;
+    // In access order, the eldest entry being the least recently used
+    private final LinkedHashMap<List<Object>, Object> results;
+    private long hits = 0;
+    private long misses = 0;
+
+    Memoized(LoxCallable function, int maxEntries) {
+        this.function = function;
+        this.results = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<List<Object>, Object> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    static void defineFunctions(Environment globals) {
+        globals.define("memo", MEMO);
+        globals.define("memoStats", MEMO_STATS);
+    }
+
+    @Override
+    public int arity() {
+        return function.arity();
+    }
+
+    // Synchronized, since Interpreters running concurrently can share functions, but not while calling the function,
+    // which may well call this one again. Concurrent misses of the same arguments both call it then.
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        synchronized (this) {
+            var result = results.get(arguments);
+            if (result != null || results.containsKey(arguments)) {
+                hits++;
+                return result;
+            }
+            misses++;
+        }
+        var result = function.call(interpreter, arguments);
+        synchronized (this) {
+            results.put(arguments, result);
+        }
+        return result;
+    }
+
+    private synchronized LoxList stats(ParallelList.Owner owner) {
+        return new LoxList(List.of((double) hits, (double) misses, (double) results.size()), owner);
+    }
+
+    @Override
+    public String toString() {
+        return function.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package com.craftinginterpreters.lox;
+
+// Error of a native function, which doesn't know where it is called from:
+// the Interpreter or the VM calling it raises it as a RuntimeError at the line of the call.
+class NativeError extends RuntimeException {
+
+    NativeError(String message) {
+        super(message);
+    }
+
+    // Arguments of natives, checked
+
+    static LoxCallable callable(String function, Object value) {
+        if (value instanceof LoxCallable callable) {
+            return callable;
+        }
+        throw expected(function, "a function", value);
+    }
+
+    static LoxList list(String function, Object value) {
+        if (value instanceof LoxList list) {
+            return list;
+        }
+        throw expected(function, "a list", value);
+    }
+
+    static double number(String function, Object value) {
+        if (value instanceof Double number) {
+            return number;
+        }
+        throw expected(function, "a number", value);
+    }
+
+    // A list the Interpreter may change: any, unless it is a worker running callbacks in parallel (see ParallelList)
+    static LoxList writableList(String function, Object value, Interpreter interpreter) {
+        var list = list(function, value);
+        if (!ParallelList.Owner.canWrite(interpreter.owner(), list.owner())) {
+            throw new NativeError("'%s' can't change a list made outside of a parallel callback".formatted(function));
+        }
+        return list;
+    }
+
+    // Index of an element of the list, truncated
+    static int index(String function, Object value, LoxList list) {
+        var index = (int) number(function, value);
+        if (index < 0 || index >= list.size()) {
+            throw outOfBounds(function, "index %d".formatted(index), list);
+        }
+        return index;
+    }
+
+    static NativeError outOfBounds(String function, String what, LoxList list) {
+        var message = "'%s' %s out of bounds for a list of %d elements".formatted(function, what, list.size());
+        return new NativeError(message);
+    }
+
+    static NativeError expected(String function, String expected, Object value) {
+        return new NativeError("'%s' expects %s but got %s".formatted(function, expected, kind(value)));
+    }
+
+    private static String kind(Object value) {
+        return switch (value) {
+            case null -> "nil";
+            case Boolean b -> "a boolean";
+            case Double d -> "a number";
+            case String s -> "a string";
+            case LoxList list -> "a list";
+            case LoxClass klass -> "a class";
+            case LoxCallable callable -> "a function";
+            case LoxInstance instance -> "an instance";
+            default -> value.toString();
+        };
+    }
+}
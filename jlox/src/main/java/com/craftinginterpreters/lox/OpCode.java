@@ -0,0 +1,77 @@
+package com.craftinginterpreters.lox;
+
+// Instructions of the bytecode VM; operands follow the opcode in the code array.
+// Plain ints rather than an enum, so the dispatch loop switches on the code array directly.
+final class OpCode {
+
+    // [constant index]
+    static final int CONSTANT = 0;
+    static final int NIL = 1;
+    static final int TRUE = 2;
+    static final int FALSE = 3;
+    static final int POP = 4;
+
+    // [depth, slot]
+    static final int GET_LOCAL = 5;
+    // [depth, slot, name token constant index], leaves the value on the stack
+    static final int SET_LOCAL = 6;
+    // [slot]
+    static final int DEFINE_LOCAL = 7;
+    // [name token constant index]
+    static final int GET_GLOBAL = 8;
+    // [name token constant index], leaves the value on the stack
+    static final int SET_GLOBAL = 9;
+    // [name constant index]
+    static final int DEFINE_GLOBAL = 10;
+
+    // [Expr.Get constant index], the node holds the inline cache shared with the Interpreter
+    static final int GET_PROPERTY = 11;
+    // [name token constant index], fails before the assigned value is evaluated
+    static final int CHECK_INSTANCE = 12;
+    // [Expr.Set constant index], leaves the value on the stack
+    static final int SET_PROPERTY = 13;
+
+    static final int EQUAL = 14;
+    static final int NOT_EQUAL = 15;
+    static final int GREATER = 16;
+    static final int GREATER_EQUAL = 17;
+    static final int LESS = 18;
+    static final int LESS_EQUAL = 19;
+    static final int ADD = 20;
+    static final int SUBTRACT = 21;
+    static final int MULTIPLY = 22;
+    static final int DIVIDE = 23;
+    static final int NEGATE = 24;
+    static final int NOT = 25;
+
+    // [target]
+    static final int JUMP = 26;
+    // [target], pops the condition
+    static final int JUMP_IF_FALSE = 27;
+    // [target], keeps the value if jumping, pops it otherwise
+    static final int JUMP_IF_TRUE_OR_POP = 28;
+    // [target], keeps the value if jumping, pops it otherwise
+    static final int JUMP_IF_FALSE_OR_POP = 29;
+    // [target], pops the selector, which must be a boolean
+    static final int TERNARY_JUMP = 30;
+
+    // [arguments count]
+    static final int CALL = 31;
+    // [function prototype constant index]
+    static final int CLOSURE = 32;
+    // [name constant index, methods count]
+    static final int CLASS = 33;
+    // [elements count]
+    static final int LIST = 34;
+    static final int PRINT = 35;
+
+    // [locals count]
+    static final int PUSH_SCOPE = 36;
+    static final int POP_SCOPE = 37;
+    static final int RETURN = 38;
+    // [arguments count], a call marked as a tail call by the Resolver: it replaces the running function if it can
+    static final int TAIL_CALL = 39;
+
+    private OpCode() {
+    }
+}
@@ -0,0 +1,345 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Rewrites resolved statements so that less is left to evaluate at runtime:
+// operations on literals are folded, groupings dropped, branches on constant conditions collapsed,
+// statements following a return, break or continue in the same block removed, and counted loops recognized.
+// Operations that would fail at runtime (division by zero, operands of the wrong type) are kept as they are,
+// so they still fail the same way. Unchanged nodes are returned as is, changed ones are rebuilt with their resolution.
+class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+
+    List<Stmt> optimize(List<Stmt> statements) {
+        var optimized = new ArrayList<Stmt>(statements.size());
+        for (var statement : statements) {
+            var result = optimize(statement);
+            if (result != null) {
+                optimized.add(result);
+            }
+        }
+        return optimized;
+    }
+
+    // Null if nothing is left to execute
+    private Stmt optimize(Stmt stmt) {
+        return stmt == null ? null : stmt.accept(this);
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr == null ? null : expr.accept(this);
+    }
+
+    // Statements of a block or a function body, those after one that never completes normally being unreachable
+    private List<Stmt> optimizeBody(List<Stmt> statements) {
+        var optimized = new ArrayList<Stmt>(statements.size());
+        for (var statement : statements) {
+            var result = optimize(statement);
+            if (result != null) {
+                optimized.add(result);
+            }
+            if (result instanceof Stmt.Return || result instanceof Stmt.Break || result instanceof Stmt.Continue) {
+                break;
+            }
+        }
+        return optimized;
+    }
+
+    // Where a statement is required, as the branch of an if or the body of a loop
+    private Stmt optimizeRequired(Stmt stmt) {
+        var result = optimize(stmt);
+        return result != null ? result : emptyBlock();
+    }
+
+    private static Stmt.Block emptyBlock() {
+        var block = new Stmt.Block(List.of());
+        block.flattened = true;
+        return block;
+    }
+
+    private List<Expr> optimizeAll(List<Expr> expressions) {
+        var optimized = new ArrayList<Expr>(expressions.size());
+        for (var expression : expressions) {
+            optimized.add(optimize(expression));
+        }
+        return sameElements(optimized, expressions) ? expressions : optimized;
+    }
+
+    private static <T> boolean sameElements(List<? extends T> a, List<? extends T> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (var i = 0; i < a.size(); i++) {
+            if (a.get(i) != b.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        var statements = optimizeBody(stmt.statements);
+        CountedLoop.recognizeAll(statements);
+        if (sameElements(statements, stmt.statements)) {
+            return stmt;
+        }
+        var block = new Stmt.Block(statements);
+        block.localCount = stmt.localCount;
+        block.flattened = stmt.flattened;
+        return block;
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        var methods = stmt.methods.stream().map(this::visitFunctionStmt).toList();
+        if (sameElements(methods, stmt.methods)) {
+            return stmt;
+        }
+        var klass = new Stmt.Class(stmt.name, methods);
+        klass.slot = stmt.slot;
+        return klass;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        var expression = optimize(stmt.expression);
+        return expression == stmt.expression ? stmt : new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt.Function visitFunctionStmt(Stmt.Function stmt) {
+        var body = optimizeBody(stmt.body);
+        if (sameElements(body, stmt.body)) {
+            return stmt;
+        }
+        var function = new Stmt.Function(stmt.name, stmt.params, body);
+        function.slot = stmt.slot;
+        function.localCount = stmt.localCount;
+        function.captures = stmt.captures;
+        return function;
+    }
+
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        var condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal literal) {
+            return Interpreter.isTruthy(literal.value) ? optimize(stmt.thenBranch) : optimize(stmt.elseBranch);
+        }
+        var thenBranch = optimizeRequired(stmt.thenBranch);
+        var elseBranch = optimize(stmt.elseBranch);
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch) {
+            return stmt;
+        }
+        return new Stmt.If(condition, thenBranch, elseBranch);
+    }
+
+    @Override
+    public Stmt visitPrintStmt(Stmt.Print stmt) {
+        var expression = optimize(stmt.expression);
+        return expression == stmt.expression ? stmt : new Stmt.Print(expression);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        var value = optimize(stmt.value);
+        return value == stmt.value ? stmt : new Stmt.Return(stmt.keyword, value);
+    }
+
+    @Override
+    public Stmt visitVariableStmt(Stmt.Variable stmt) {
+        var initializer = optimize(stmt.initializer);
+        if (initializer == stmt.initializer) {
+            return stmt;
+        }
+        var variable = new Stmt.Variable(stmt.name, initializer);
+        variable.slot = stmt.slot;
+        return variable;
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        var condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal literal && !Interpreter.isTruthy(literal.value)) {
+            return null;
+        }
+        var body = optimizeRequired(stmt.body);
+        var forLoopStep = optimize(stmt.forLoopStep);
+        if (condition == stmt.condition && body == stmt.body && forLoopStep == stmt.forLoopStep) {
+            return stmt;
+        }
+        return new Stmt.While(condition, body, forLoopStep);
+    }
+
+    @Override
+    public Stmt visitBreakStmt(Stmt.Break stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitContinueStmt(Stmt.Continue stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Expr visitAssignmentExpr(Expr.Assignment expr) {
+        var value = optimize(expr.value);
+        if (value == expr.value) {
+            return expr;
+        }
+        var assignment = new Expr.Assignment(expr.name, value);
+        assignment.depth = expr.depth;
+        assignment.slot = expr.slot;
+        return assignment;
+    }
+
+    @Override
+    public Expr visitBinaryExpr(Expr.Binary expr) {
+        var left = optimize(expr.left);
+        var right = optimize(expr.right);
+        if (left instanceof Expr.Literal leftLiteral && right instanceof Expr.Literal rightLiteral) {
+            var value = fold(expr.operator.type(), leftLiteral.value, rightLiteral.value);
+            if (value != null) {
+                return new Expr.Literal(value);
+            }
+        }
+        return left == expr.left && right == expr.right ? expr : new Expr.Binary(left, expr.operator, right);
+    }
+
+    // Same results as Interpreter.visitBinaryExpr, null where it would fail
+    private static Object fold(TokenType operator, Object left, Object right) {
+        if (left instanceof Double l && right instanceof Double r) {
+            return switch (operator) {
+                case MINUS -> l - r;
+                case STAR -> l * r;
+                case SLASH -> r == 0 ? null : l / r;
+                case PLUS -> l + r;
+                case GREATER -> l > r;
+                case GREATER_EQUAL -> l >= r;
+                case LESS -> l < r;
+                case LESS_EQUAL -> l <= r;
+                case EQUAL_EQUAL -> l.equals(r);
+                case BANG_EQUAL -> !l.equals(r);
+                default -> null;
+            };
+        }
+        return switch (operator) {
+            case PLUS -> left instanceof String || right instanceof String
+                ? Interpreter.stringify(left) + Interpreter.stringify(right)
+                : null;
+            case EQUAL_EQUAL -> Interpreter.isEqual(left, right);
+            case BANG_EQUAL -> !Interpreter.isEqual(left, right);
+            default -> null;
+        };
+    }
+
+    @Override
+    public Expr visitCallExpr(Expr.Call expr) {
+        var callee = optimize(expr.callee);
+        var arguments = optimizeAll(expr.arguments);
+        if (callee == expr.callee && arguments == expr.arguments) {
+            return expr;
+        }
+        var call = new Expr.Call(callee, expr.paren, arguments);
+        call.tailCall = expr.tailCall;
+        return call;
+    }
+
+    @Override
+    public Expr visitGetExpr(Expr.Get expr) {
+        var object = optimize(expr.object);
+        return object == expr.object ? expr : new Expr.Get(object, expr.name);
+    }
+
+    @Override
+    public Expr visitTernaryExpr(Expr.Ternary expr) {
+        var selector = optimize(expr.selector);
+        // Any other selector fails at runtime
+        if (selector instanceof Expr.Literal literal && literal.value instanceof Boolean value) {
+            return value ? optimize(expr.left) : optimize(expr.right);
+        }
+        var left = optimize(expr.left);
+        var right = optimize(expr.right);
+        if (selector == expr.selector && left == expr.left && right == expr.right) {
+            return expr;
+        }
+        return new Expr.Ternary(selector, left, right, expr.selectorLine);
+    }
+
+    @Override
+    public Expr visitGroupingExpr(Expr.Grouping expr) {
+        return optimize(expr.expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpr(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitLogicalExpr(Expr.Logical expr) {
+        var left = optimize(expr.left);
+        if (left instanceof Expr.Literal literal) {
+            // The left operand is the result when it decides, the right one otherwise
+            var decides = (expr.operator.type() == TokenType.OR) == Interpreter.isTruthy(literal.value);
+            return decides ? left : optimize(expr.right);
+        }
+        var right = optimize(expr.right);
+        return left == expr.left && right == expr.right ? expr : new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitSetExpr(Expr.Set expr) {
+        var object = optimize(expr.object);
+        var value = optimize(expr.value);
+        return object == expr.object && value == expr.value ? expr : new Expr.Set(object, expr.name, value);
+    }
+
+    @Override
+    public Expr visitThisExpr(Expr.This expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpr(Expr.Unary expr) {
+        var right = optimize(expr.right);
+        if (right instanceof Expr.Literal literal) {
+            switch (expr.operator.type()) {
+                case MINUS -> {
+                    if (literal.value instanceof Double value) {
+                        return new Expr.Literal(-value);
+                    }
+                }
+                case BANG -> {
+                    return new Expr.Literal(!Interpreter.isTruthy(literal.value));
+                }
+                default -> {
+                }
+            }
+        }
+        return right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpr(Expr.Variable expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitFunctionExpr(Expr.Function expr) {
+        var body = optimizeBody(expr.body);
+        if (sameElements(body, expr.body)) {
+            return expr;
+        }
+        var function = new Expr.Function(expr.params, body);
+        function.localCount = expr.localCount;
+        function.captures = expr.captures;
+        return function;
+    }
+
+    @Override
+    public Expr visitLoxListExpr(Expr.LoxList expr) {
+        var elements = optimizeAll(expr.elements);
+        return elements == expr.elements ? expr : new Expr.LoxList(elements);
+    }
+}
@@ -0,0 +1,161 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// pmap, pfilter and preduce: map, filter and reduce of a LoxList split in chunks, run on the common ForkJoinPool.
+// They are meant for pure callbacks. Every chunk runs in a worker Interpreter of its own (see Interpreter.worker()),
+// which may read anything but only write what it made itself: its own variables, lists and instances. Assigning a
+// global or a variable captured from outside, and changing a list or an instance made outside, fail with a
+// RuntimeError instead of racing, whether the callback does it or any function it calls.
+// Chunks are joined in order, the error reported being the one of the first chunk failing. Once they are all done,
+// what the workers made is handed over to the caller, which can change the results as it pleases.
+final class ParallelList {
+
+    private static final ForkJoinPool POOL = ForkJoinPool.commonPool();
+    // Below that, elements are not worth a task
+    private static final int MIN_CHUNK_ELEMENTS = 256;
+    // Chunks per worker of the pool, so that workers given slow elements don't end up working alone
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    // Stamp of what a worker makes: cells of captured variables, lists and instances (null when not made by a worker).
+    // A worker may only write what it made, or what the workers it waited for made, handed over to it once done.
+    static final class Owner {
+        private boolean done = false;
+        // Owner of what this one made once done, null if the caller is not a worker
+        private Owner heir;
+
+        private void handOver(Owner heir) {
+            this.heir = heir;
+            this.done = true;
+        }
+
+        // Whether the writer, null unless it is a worker, may write what was made by the owner
+        static boolean canWrite(Owner writer, Owner owner) {
+            if (writer == null) {
+                return true;
+            }
+            while (owner != null && owner.done) {
+                owner = owner.heir;
+            }
+            return owner == writer;
+        }
+    }
+
+    static final LoxCallable PMAP = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.get(0), arguments.get(1));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list, Object function) {
+            var elements = NativeError.list("pmap", list);
+            var callback = NativeError.callable("pmap", function);
+            return concat(inChunks(interpreter, elements, (worker, chunk) -> chunk.map(worker, callback)));
+        }
+    };
+
+    static final LoxCallable PFILTER = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 2;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.get(0), arguments.get(1));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list, Object predicate) {
+            var elements = NativeError.list("pfilter", list);
+            var callback = NativeError.callable("pfilter", predicate);
+            return concat(inChunks(interpreter, elements, (worker, chunk) -> chunk.filter(worker, callback)));
+        }
+    };
+
+    // Every chunk is reduced from the initial value, then their results are, in order: the function must be
+    // associative, and the initial value neutral, like 0 for a sum
+    static final LoxCallable PREDUCE = new LoxCallable() {
+        @Override
+        public int arity() {
+            return 3;
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, List<Object> arguments) {
+            return call(interpreter, arguments.get(0), arguments.get(1), arguments.get(2));
+        }
+
+        @Override
+        public Object call(Interpreter interpreter, Object list, Object function, Object initial) {
+            var elements = NativeError.list("preduce", list);
+            var callback = NativeError.callable("preduce", function);
+            var results = inChunks(interpreter, elements, (worker, chunk) -> chunk.reduce(worker, callback, initial));
+            var worker = interpreter.worker();
+            var result = results.getFirst();
+            for (var i = 1; i < results.size(); i++) {
+                result = callback.call(worker, result, results.get(i));
+            }
+            worker.owner().handOver(interpreter.owner());
+            return result;
+        }
+    };
+
+    static void defineFunctions(Environment globals) {
+        globals.define("pmap", PMAP);
+        globals.define("pfilter", PFILTER);
+        globals.define("preduce", PREDUCE);
+    }
+
+    private interface ChunkTask<T> {
+        T run(Interpreter worker, LoxList chunk);
+    }
+
+    // Results of the chunks of the list, in order, at least one even for an empty list.
+    // Chunks are copies, so that the elements run are those of the list when called.
+    private static <T> List<T> inChunks(Interpreter interpreter, LoxList list, ChunkTask<T> task) {
+        var size = list.size();
+        var chunks = Math.max(1, Math.min(size / MIN_CHUNK_ELEMENTS, POOL.getParallelism() * CHUNKS_PER_WORKER));
+        var workers = new ArrayList<Interpreter>(chunks);
+        var results = new ArrayList<T>(chunks);
+        if (chunks == 1) {
+            var worker = interpreter.worker();
+            workers.add(worker);
+            results.add(task.run(worker, list.slice(0, size, worker.owner())));
+        } else {
+            var tasks = new ArrayList<ForkJoinTask<T>>(chunks);
+            for (var i = 0; i < chunks; i++) {
+                var worker = interpreter.worker();
+                var from = (int) ((long) size * i / chunks);
+                var chunk = list.slice(from, (int) ((long) size * (i + 1) / chunks), worker.owner());
+                workers.add(worker);
+                tasks.add(POOL.submit(() -> task.run(worker, chunk)));
+            }
+            for (var chunk : tasks) {
+                results.add(chunk.join());
+            }
+        }
+        for (var worker : workers) {
+            worker.owner().handOver(interpreter.owner());
+        }
+        return results;
+    }
+
+    // The lists of the chunks, all owned by the caller now
+    private static LoxList concat(List<LoxList> lists) {
+        var result = lists.getFirst();
+        for (var i = 1; i < lists.size(); i++) {
+            result.addAll(lists.get(i));
+        }
+        return result;
+    }
+}
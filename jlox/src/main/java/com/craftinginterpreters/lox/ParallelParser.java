@@ -0,0 +1,113 @@
+package com.craftinginterpreters.lox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import static com.craftinginterpreters.lox.TokenType.*;
+
+// Parses big sources as chunks of top-level declarations on a ForkJoinPool, the statements being merged in order.
+// The whole source is scanned first, then split before class, fun and var keywords at the top level which follow
+// the ';' or '}' ending the previous statement, the same places Parser.synchronize() resumes at.
+// Any error in a chunk makes the whole source parsed again sequentially, so errors are reported as usual.
+final class ParallelParser {
+
+    // Below that, chunks are not worth the tasks
+    private static final int MIN_CHUNK_TOKENS = 4096;
+    // Chunks per worker of the pool, so that workers given big declarations don't end up working alone
+    private static final int CHUNKS_PER_WORKER = 4;
+
+    private final ForkJoinPool pool;
+    private final ErrorReporter reporter;
+
+    ParallelParser(ForkJoinPool pool, ErrorReporter reporter) {
+        this.pool = pool;
+        this.reporter = reporter;
+    }
+
+    List<Stmt> parse(String source) {
+        var tokens = scan(source);
+        var boundaries = boundaries(tokens);
+        if (boundaries.size() == 2) {
+            return new Parser(tokens, reporter).parse();
+        }
+
+        var chunks = new ArrayList<ForkJoinTask<List<Stmt>>>();
+        for (var i = 0; i + 1 < boundaries.size(); i++) {
+            var chunk = tokens.slice(boundaries.get(i), boundaries.get(i + 1));
+            chunks.add(pool.submit(() -> parseChunk(chunk)));
+        }
+        var statements = new ArrayList<Stmt>();
+        for (var chunk : chunks) {
+            var chunkStatements = chunk.join();
+            if (chunkStatements == null) {
+                return new Parser(tokens, reporter).parse();
+            }
+            statements.addAll(chunkStatements);
+        }
+        return statements;
+    }
+
+    // All the tokens, ending with EOF; scanning errors are reported as they are found
+    private TokenBuffer scan(String source) {
+        var scanner = new Scanner(source, reporter);
+        var tokens = new TokenBuffer();
+        var batch = new TokenBuffer();
+        do {
+            scanner.scan(batch);
+            tokens.addAll(batch);
+        } while (tokens.type(tokens.size() - 1) != EOF);
+        tokens.chars = source.toCharArray();
+        tokens.charsOffset = 0;
+        return tokens;
+    }
+
+    // Indexes of the first token of each chunk, then of the EOF
+    private List<Integer> boundaries(TokenBuffer tokens) {
+        var eof = tokens.size() - 1;
+        var chunkTokens = Math.max(MIN_CHUNK_TOKENS, eof / (pool.getParallelism() * CHUNKS_PER_WORKER));
+        var boundaries = new ArrayList<Integer>();
+        boundaries.add(0);
+        var depth = 0;
+        for (var i = 0; i < eof; i++) {
+            switch (tokens.type(i)) {
+                case LEFT_PAREN, LEFT_BRACE, LEFT_BRACKET -> depth++;
+                case RIGHT_PAREN, RIGHT_BRACE, RIGHT_BRACKET -> depth--;
+                case CLASS, FUN, VAR -> {
+                    if (depth == 0 && i - boundaries.getLast() >= chunkTokens && endsStatement(tokens.type(i - 1))) {
+                        boundaries.add(i);
+                    }
+                }
+                default -> {
+                }
+            }
+        }
+        boundaries.add(eof);
+        return boundaries;
+    }
+
+    private static boolean endsStatement(TokenType type) {
+        return type == SEMICOLON || type == RIGHT_BRACE;
+    }
+
+    // Null if there were errors
+    private static List<Stmt> parseChunk(TokenBuffer chunk) {
+        var errors = new ErrorFlag();
+        var statements = new Parser(chunk, errors).parse();
+        return errors.found ? null : statements;
+    }
+
+    private static class ErrorFlag implements ErrorReporter {
+        boolean found = false;
+
+        @Override
+        public void error(int line, String where, String message) {
+            found = true;
+        }
+
+        @Override
+        public void runtimeError(RuntimeError error) {
+        }
+    }
+}
@@ -46,12 +46,28 @@ import static com.craftinginterpreters.lox.TokenType.*;
 public class Parser {
 
     private static final int MAX_FUNCTION_ARGS = 255;
-    private final List<Token> tokens;
+    // Tokens are scanned in batches as parsing goes; Token objects are only created for the ones the AST keeps
+    // Null when all the tokens are already scanned
+    private final Scanner scanner;
+    private final TokenBuffer tokens;
+    private final ErrorReporter reporter;
     private int current = 0;
+    // Last token of the previous batch, whose characters the scanner may not hold anymore
+    private Token lastOfPreviousBatch;
     private Expr enclosingLoopCondition;
 
-    Parser(List<Token> tokens) {
+    Parser(Scanner scanner, ErrorReporter reporter) {
+        this.scanner = scanner;
+        this.tokens = new TokenBuffer();
+        this.reporter = reporter;
+        scanner.scan(tokens);
+    }
+
+    // Parses tokens scanned beforehand, which must end with EOF
+    Parser(TokenBuffer tokens, ErrorReporter reporter) {
+        this.scanner = null;
         this.tokens = tokens;
+        this.reporter = reporter;
     }
 
     List<Stmt> parse() {
@@ -84,7 +100,7 @@ public class Parser {
     }
 
     private Stmt classDeclaration() {
-        var name = consume(IDENTIFIER, "Expect class name");
+        var name = consumeIdentifier("Expect class name");
         consume(LEFT_BRACE, "Expect '{' before class body");
 
         var methods = new ArrayList<Stmt.Function>();
@@ -98,7 +114,7 @@ public class Parser {
     }
 
     private Stmt.Function funDeclaration(String kind) {
-        var name = consume(IDENTIFIER, "Expect %s name".formatted(kind));
+        var name = consumeIdentifier("Expect %s name".formatted(kind));
         var parametersAndBody = funParamsAndBody(kind);
         return new Stmt.Function(name, parametersAndBody.params, parametersAndBody.body);
     }
@@ -109,7 +125,7 @@ public class Parser {
         var parameters = new ArrayList<Token>();
         if (!check(RIGHT_PAREN)) {
             do {
-                parameters.add(consume(IDENTIFIER, "Expect parameter name"));
+                parameters.add(consumeIdentifier("Expect parameter name"));
                 if (parameters.size() >= MAX_FUNCTION_ARGS) {
                     error(peek(), "Can't have more than %d parameters".formatted(MAX_FUNCTION_ARGS));
                 }
@@ -128,7 +144,7 @@ public class Parser {
     }
 
     private Stmt varDeclaration() {
-        var name = consume(IDENTIFIER, "Expect variable name");
+        var name = consumeIdentifier("Expect variable name");
         var initializer = match(EQUAL) ? expression() : null;
         consume(SEMICOLON, "Expect ';' after variable declaration");
         return new Stmt.Variable(name, initializer);
@@ -383,7 +399,7 @@ public class Parser {
             if (match(LEFT_PAREN)) {
                 expr = finishCall(expr);
             } else if (match(DOT)) {
-                var name = consume(IDENTIFIER, "Expect property name after '.'");
+                var name = consumeIdentifier("Expect property name after '.'");
                 expr = new Expr.Get(expr, name);
             } else {
                 break;
@@ -404,7 +420,8 @@ public class Parser {
             } while (match(COMMA));
         }
 
-        var paren = consume(RIGHT_PAREN, "Expect ')' after arguments");
+        consume(RIGHT_PAREN, "Expect ')' after arguments");
+        var paren = previous();
 
         return new Expr.Call(callee, paren, arguments);
     }
@@ -481,37 +498,47 @@ public class Parser {
         if (isAtEnd()) {
             return false;
         }
-        return peek().type() == type;
+        return tokens.type(current) == type;
     }
 
-    private Token advance() {
-        if (!isAtEnd()) {
-            current++;
+    private void advance() {
+        if (isAtEnd()) {
+            return;
+        }
+        current++;
+        if (current == tokens.size()) {
+            lastOfPreviousBatch = tokens.token(current - 1);
+            scanner.scan(tokens);
+            current = 0;
         }
-        return previous();
     }
 
     private boolean isAtEnd() {
-        return peek().type() == EOF;
+        return tokens.type(current) == EOF;
     }
 
     private Token peek() {
-        return tokens.get(current);
+        return tokens.token(current);
     }
 
     private Token previous() {
-        return tokens.get(current - 1);
+        return current == 0 ? lastOfPreviousBatch : tokens.token(current - 1);
     }
 
-    private Token consume(TokenType type, String message) {
-        if (check(type)) {
-            return advance();
+    private void consume(TokenType type, String message) {
+        if (!check(type)) {
+            throw error(peek(), message);
         }
-        throw error(peek(), message);
+        advance();
+    }
+
+    private Token consumeIdentifier(String message) {
+        consume(IDENTIFIER, message);
+        return previous();
     }
 
     private ParseError error(Token token, String message) {
-        Lox.error(token, message);
+        reporter.error(token, message);
         return new ParseError();
     }
 
@@ -525,7 +552,7 @@ public class Parser {
                 return;
             }
 
-            if (terminalTypes.contains(peek().type())) {
+            if (terminalTypes.contains(tokens.type(current))) {
                 return;
             }
 
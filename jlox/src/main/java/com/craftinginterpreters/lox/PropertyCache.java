@@ -0,0 +1,107 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+// Inline cache of a property access site, keyed by the Shape of the instances seen there.
+// A Shape belongs to a single class, so an entry tells both where the field is and which method to use otherwise.
+// It is immutable and replaced on a miss, so a site can be safely shared by concurrently running interpreters.
+final class PropertyCache {
+
+    static final PropertyCache EMPTY = new PropertyCache(new Shape[0], new int[0], new Object[0]);
+    // Beyond that the oldest entry is dropped: Interpreters running the same CompiledScript have their own classes,
+    // hence shapes, and a site must not stay stuck with the ones of Interpreters long gone
+    private static final int MAX_SHAPES = 4;
+
+    private final Shape[] shapes;
+    // Slot of the field, -1 if the shape has none
+    private final int[] slots;
+    // When there is no field: the method found for a get site, the shape with the field added for a set site
+    private final Object[] targets;
+
+    private PropertyCache(Shape[] shapes, int[] slots, Object[] targets) {
+        this.shapes = shapes;
+        this.slots = slots;
+        this.targets = targets;
+    }
+
+    // Field or bound method, fields shadow methods
+    static Object get(Expr.Get site, LoxInstance instance) {
+        var field = getField(site, instance);
+        if (field != LoxInstance.UNDEFINED) {
+            return field;
+        }
+        return findMethod(site, instance).bind(instance);
+    }
+
+    static Object getField(Expr.Get site, LoxInstance instance) {
+        var cache = site.cache;
+        var shape = instance.shape();
+        var index = cache.indexOf(shape);
+        int slot;
+        if (index != -1) {
+            slot = cache.slots[index];
+        } else {
+            slot = shape.slotOf(site.name.lexeme());
+            var method = slot == -1 ? instance.klass.findMethod(site.name.lexeme()) : null;
+            site.cache = cache.with(shape, slot, method);
+        }
+        return slot == -1 ? LoxInstance.UNDEFINED : instance.get(slot);
+    }
+
+    // Method to call, without binding it, once getField found no field of the same name
+    static LoxMethod findMethod(Expr.Get site, LoxInstance instance) {
+        var cache = site.cache;
+        var index = cache.indexOf(instance.shape());
+        var method = index != -1 ? (LoxMethod) cache.targets[index] : instance.klass.findMethod(site.name.lexeme());
+        if (method == null) {
+            throw new RuntimeError(site.name, "Undefined property '%s'".formatted(site.name.lexeme()));
+        }
+        return method;
+    }
+
+    static void set(Expr.Set site, LoxInstance instance, Object value) {
+        var cache = site.cache;
+        var shape = instance.shape();
+        var index = cache.indexOf(shape);
+        if (index != -1) {
+            var slot = cache.slots[index];
+            if (slot != -1) {
+                instance.set(slot, value);
+            } else {
+                instance.addField((Shape) cache.targets[index], value);
+            }
+            return;
+        }
+
+        var slot = shape.slotOf(site.name.lexeme());
+        if (slot != -1) {
+            instance.set(slot, value);
+            site.cache = cache.with(shape, slot, null);
+        } else {
+            var newShape = shape.withField(site.name.lexeme());
+            instance.addField(newShape, value);
+            site.cache = cache.with(shape, -1, newShape);
+        }
+    }
+
+    private int indexOf(Shape shape) {
+        for (var i = 0; i < shapes.length; i++) {
+            if (shapes[i] == shape) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private PropertyCache with(Shape shape, int slot, Object target) {
+        var from = shapes.length == MAX_SHAPES ? 1 : 0;
+        var length = shapes.length - from;
+        var newShapes = Arrays.copyOfRange(shapes, from, shapes.length + 1);
+        var newSlots = Arrays.copyOfRange(slots, from, slots.length + 1);
+        var newTargets = Arrays.copyOfRange(targets, from, targets.length + 1);
+        newShapes[length] = shape;
+        newSlots[length] = slot;
+        newTargets[length] = target;
+        return new PropertyCache(newShapes, newSlots, newTargets);
+    }
+}
@@ -4,20 +4,35 @@ import java.util.*;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    // Innermost scope, null at the top level
+    private Scope currentScope = null;
+    // In the order they were begun, enclosing scopes first
+    private final List<Scope> scopes = new ArrayList<>();
+    // Setting of depths, slots and locals counts, once scopes are laid out: whether a block gets an Environment
+    // of its own is only known at its end, when all the closures that could capture its variables are resolved
+    private final List<Runnable> fixups = new ArrayList<>();
     private FunctionType currentFunction = FunctionType.NONE;
+    // Innermost function being resolved, null at the top level
+    private Closure currentClosure = null;
     private boolean currentlyInLoop = false;
     private ClassType currentClass = ClassType.NONE;
+    private final ErrorReporter reporter;
 
-    public Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
+    Resolver(ErrorReporter reporter) {
+        this.reporter = reporter;
     }
 
     @Override
     public Void visitAssignmentExpr(Expr.Assignment expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+        var reference = lookUp(expr.name);
+        if (reference != null) {
+            fixups.add(() -> {
+                var address = reference.address();
+                expr.depth = address.depth();
+                expr.slot = address.slot();
+            });
+        }
         return null;
     }
 
@@ -77,11 +92,18 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitThisExpr(Expr.This expr) {
         if (currentClass == ClassType.NONE) {
-            Lox.error(expr.keyword, "Can't use 'this' outside of a class");
+            reporter.error(expr.keyword, "Can't use 'this' outside of a class");
             return null;
         }
 
-        resolveLocal(expr, expr.keyword);
+        var reference = lookUp(expr.keyword);
+        if (reference != null) {
+            fixups.add(() -> {
+                var address = reference.address();
+                expr.depth = address.depth();
+                expr.slot = address.slot();
+            });
+        }
         return null;
     }
 
@@ -93,16 +115,27 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
-        if (!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme()) == Boolean.FALSE) {
-            Lox.error(expr.name, "Can't read local variable in its own initializer.");
+        if (currentScope != null && isDeclaredButNotDefined(currentScope.locals.get(expr.name.lexeme()))) {
+            reporter.error(expr.name, "Can't read local variable in its own initializer.");
+        }
+        var reference = lookUp(expr.name);
+        if (reference != null) {
+            fixups.add(() -> {
+                var address = reference.address();
+                expr.depth = address.depth();
+                expr.slot = address.slot();
+            });
         }
-        resolveLocal(expr, expr.name);
         return null;
     }
 
     @Override
     public Void visitFunctionExpr(Expr.Function expr) {
-        resolveFunction(expr.params, expr.body, FunctionType.FUNCTION);
+        var closure = resolveFunction(expr.params, expr.body, FunctionType.FUNCTION);
+        fixups.add(() -> {
+            expr.localCount = closure.localCount();
+            expr.captures = closure.captures();
+        });
         return null;
     }
 
@@ -114,9 +147,13 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
-        beginScope();
-        resolve(stmt.statements);
+        var scope = beginScope(true);
+        resolveAll(stmt.statements);
         endScope();
+        fixups.add(() -> {
+            stmt.flattened = scope.frame != scope;
+            stmt.localCount = stmt.flattened ? 0 : scope.size;
+        });
         return null;
     }
 
@@ -126,15 +163,20 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         currentClass = ClassType.CLASS;
 
         try {
-            declare(stmt.name);
+            var local = declare(stmt.name);
+            fixups.add(() -> stmt.slot = slotOf(local));
             define(stmt.name);
 
-            beginScope();
-            scopes.peek().put("this", true);
+            beginScope(false);
+            declareThis();
 
             stmt.methods.forEach(m -> {
                 var declaration = m.name.lexeme().equals("init") ? FunctionType.INITIALIZER : FunctionType.METHOD;
-                resolveFunction(m.params, m.body, declaration);
+                var closure = resolveFunction(m.params, m.body, declaration);
+                fixups.add(() -> {
+                    m.localCount = closure.localCount();
+                    m.captures = closure.captures();
+                });
             });
 
             endScope();
@@ -153,9 +195,14 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        declare(stmt.name);
+        var local = declare(stmt.name);
+        fixups.add(() -> stmt.slot = slotOf(local));
         define(stmt.name);
-        resolveFunction(stmt.params, stmt.body, FunctionType.FUNCTION);
+        var closure = resolveFunction(stmt.params, stmt.body, FunctionType.FUNCTION);
+        fixups.add(() -> {
+            stmt.localCount = closure.localCount();
+            stmt.captures = closure.captures();
+        });
         return null;
     }
 
@@ -177,21 +224,23 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitReturnStmt(Stmt.Return stmt) {
         if (currentFunction == FunctionType.NONE) {
-            Lox.error(stmt.keyword, "Can't return from top-level code");
+            reporter.error(stmt.keyword, "Can't return from top-level code");
         }
         Optional.ofNullable(stmt.value)
             .ifPresent(rv -> {
                 if (currentFunction == FunctionType.INITIALIZER) {
-                    Lox.error(stmt.keyword, "Can't return a value from an initializer");
+                    reporter.error(stmt.keyword, "Can't return a value from an initializer");
                 }
                 resolve(rv);
+                markTailCalls(rv);
             });
         return null;
     }
 
     @Override
     public Void visitVariableStmt(Stmt.Variable stmt) {
-        declare(stmt.name);
+        var local = declare(stmt.name);
+        fixups.add(() -> stmt.slot = slotOf(local));
         if (stmt.initializer != null) {
             resolve(stmt.initializer);
         }
@@ -216,7 +265,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitBreakStmt(Stmt.Break stmt) {
         if (!currentlyInLoop) {
-            Lox.error(stmt.keyword, "Can't break from top-level code");
+            reporter.error(stmt.keyword, "Can't break from top-level code");
         }
         return null;
     }
@@ -224,12 +273,34 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     @Override
     public Void visitContinueStmt(Stmt.Continue stmt) {
         if (!currentlyInLoop) {
-            Lox.error(stmt.keyword, "Can't continue from top-level code");
+            reporter.error(stmt.keyword, "Can't continue from top-level code");
         }
         return null;
     }
 
+    // Calls whose value is returned as is, which the Interpreter runs in place of the returning call
+    private void markTailCalls(Expr returned) {
+        switch (returned) {
+            case Expr.Call call -> call.tailCall = true;
+            case Expr.Grouping grouping -> markTailCalls(grouping.expression);
+            case Expr.Ternary ternary -> {
+                markTailCalls(ternary.left);
+                markTailCalls(ternary.right);
+            }
+            // The left operand is returned as is too, but it has to be evaluated before deciding
+            case Expr.Logical logical -> markTailCalls(logical.right);
+            default -> {
+            }
+        }
+    }
+
     void resolve(List<Stmt> statements) {
+        resolveAll(statements);
+        layOut();
+        fixups.forEach(Runnable::run);
+    }
+
+    private void resolveAll(List<Stmt> statements) {
         statements.forEach(this::resolve);
     }
 
@@ -241,55 +312,219 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         expr.accept(this);
     }
 
-    private void beginScope() {
-        scopes.push(new HashMap<>());
+    private Scope beginScope(boolean block) {
+        currentScope = new Scope(currentScope, block);
+        scopes.add(currentScope);
+        return currentScope;
     }
 
     private void endScope() {
-        scopes.pop();
+        currentScope = currentScope.enclosing;
     }
 
-    private void declare(Token name) {
-        if (scopes.isEmpty()) {
-            return;
+    // Returns the declared local, or null for a global
+    private Local declare(Token name) {
+        if (currentScope == null) {
+            return null;
         }
-        var scope = scopes.peek();
-        if (scope.containsKey(name.lexeme())) {
-            Lox.error(name, "Already a variable with this name in this scope");
+        var locals = currentScope.locals;
+        if (locals.containsKey(name.lexeme())) {
+            reporter.error(name, "Already a variable with this name in this scope");
         }
-        scope.put(name.lexeme(), false);
+        var local = new Local(currentScope, locals.size());
+        locals.put(name.lexeme(), local);
+        return local;
+    }
+
+    private void declareThis() {
+        var local = new Local(currentScope, currentScope.locals.size());
+        local.defined = true;
+        currentScope.locals.put("this", local);
     }
 
     private void define(Token name) {
-        if (!scopes.isEmpty()) {
-            scopes.peek().put(name.lexeme(), true);
+        if (currentScope != null) {
+            currentScope.locals.get(name.lexeme()).defined = true;
         }
     }
 
-    private void resolveLocal(Expr expr, Token name) {
-        for (int i = scopes.size() - 1; i >= 0; i--) {
-            if (scopes.get(i).containsKey(name.lexeme())) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
-                return;
+    private boolean isDeclaredButNotDefined(Local local) {
+        return local != null && !local.defined;
+    }
+
+    private static int slotOf(Local local) {
+        return local == null ? -1 : local.slot();
+    }
+
+    // Returns null if the variable is not found, so it is assumed to be a global
+    private Reference lookUp(Token name) {
+        return lookUp(name.lexeme(), currentScope, currentClosure);
+    }
+
+    // Looks the name up from the scope, within the function: variables of the scopes enclosing the function
+    // are captured by it, in a scope of its own enclosing its outermost one
+    private Reference lookUp(String name, Scope from, Closure function) {
+        for (var scope = from; scope != null; scope = scope.enclosing) {
+            var local = scope.locals.get(name);
+            if (local != null) {
+                return new Reference(from, local, null, -1);
+            }
+            if (function != null && scope == function.outermostScope) {
+                break;
             }
         }
+        if (function == null) {
+            return null;
+        }
+        var slot = capture(function, name);
+        return slot == -1 ? null : new Reference(from, null, function, slot);
     }
 
-    private void resolveFunction(List<Token> params, List<Stmt> body, FunctionType type) {
+    // Returns the slot of the variable among those captured by the function, or -1 for a global
+    private int capture(Closure function, String name) {
+        var slot = function.captured.get(name);
+        if (slot != null) {
+            return slot;
+        }
+        // As seen from where the function is created, which may capture it in turn
+        var source = lookUp(name, function.outermostScope.enclosing, function.enclosing);
+        if (source == null) {
+            return -1;
+        }
+        if (source.local() != null) {
+            source.local().scope.captured = true;
+        }
+        slot = function.captured.size();
+        function.captured.put(name, slot);
+        function.sources.add(source);
+        return slot;
+    }
+
+    private Closure resolveFunction(List<Token> params, List<Stmt> body, FunctionType type) {
         var enclosingFunction = currentFunction;
+        var enclosingClosure = currentClosure;
         currentFunction = type;
         try {
-            beginScope();
+            var scope = beginScope(false);
+            // Methods start at the scope of 'this' of their class, created when they are bound
+            var method = type == FunctionType.METHOD || type == FunctionType.INITIALIZER;
+            currentClosure = new Closure(enclosingClosure, method ? scope.enclosing : scope, scope);
             params.forEach(p -> {
                 declare(p);
                 define(p);
             });
-            resolve(body);
+            resolveAll(body);
             endScope();
+            return currentClosure;
         } finally {
             currentFunction = enclosingFunction;
+            currentClosure = enclosingClosure;
+        }
+    }
+
+    // Gives every scope its Environment: blocks whose locals no closure captures share the one of the enclosing
+    // scope, their locals coming after those of the enclosing scope, where sibling blocks reuse the same slots.
+    // Only captured locals need an Environment per execution of their block, for closures to keep their own.
+    private void layOut() {
+        for (var scope : scopes) {
+            if (scope.block && !scope.captured && scope.enclosing != null) {
+                scope.frame = scope.enclosing.frame;
+                scope.offset = scope.enclosing.offset + scope.enclosing.locals.size();
+            }
+            scope.frame.size = Math.max(scope.frame.size, scope.offset + scope.locals.size());
+        }
+    }
+
+    // Distance between the Environments of the scopes, the second one enclosing the first one in the same function
+    private static int distance(Scope from, Scope to) {
+        var distance = 0;
+        for (var frame = from.frame; frame != to.frame; frame = frame.enclosing.frame) {
+            distance++;
         }
+        return distance;
     }
 
     private enum ClassType {NONE, CLASS}
+
+    private static class Scope {
+        final Scope enclosing;
+        final boolean block;
+        final Map<String, Local> locals = new HashMap<>();
+        // One of its locals is captured by a closure
+        boolean captured = false;
+        // Scope whose Environment holds the locals, from their slot offset on
+        Scope frame = this;
+        int offset = 0;
+        // Slots of the Environment, when it's its own
+        int size = 0;
+
+        Scope(Scope enclosing, boolean block) {
+            this.enclosing = enclosing;
+            this.block = block;
+        }
+    }
+
+    // Index is the position of a variable in its scope, in declaration order
+    private static class Local {
+        final Scope scope;
+        final int index;
+        boolean defined = false;
+
+        Local(Scope scope, int index) {
+            this.scope = scope;
+            this.index = index;
+        }
+
+        // Once scopes are laid out
+        int slot() {
+            return scope.offset + index;
+        }
+    }
+
+    private record Address(int depth, int slot) {
+    }
+
+    // Variable found from a scope: a local of the same function, or one captured by the function
+    private record Reference(Scope from, Local local, Closure function, int captured) {
+
+        // Once scopes are laid out
+        Address address() {
+            if (local != null) {
+                return new Address(distance(from, local.scope), local.slot());
+            }
+            return new Address(distance(from, function.outermostScope) + 1, captured);
+        }
+    }
+
+    // Function being resolved, with the variables of enclosing scopes it uses, in the order of their slots
+    private static class Closure {
+        final Closure enclosing;
+        // Scope of its parameters, or of 'this' for methods
+        final Scope outermostScope;
+        final Scope parameters;
+        final Map<String, Integer> captured = new HashMap<>();
+        final List<Reference> sources = new ArrayList<>();
+
+        Closure(Closure enclosing, Scope outermostScope, Scope parameters) {
+            this.enclosing = enclosing;
+            this.outermostScope = outermostScope;
+            this.parameters = parameters;
+        }
+
+        // Once scopes are laid out
+        int localCount() {
+            return parameters.size;
+        }
+
+        // (distance, slot) pairs, from the Environment the function is created in
+        int[] captures() {
+            var captures = new int[sources.size() * 2];
+            for (var i = 0; i < sources.size(); i++) {
+                var address = sources.get(i).address();
+                captures[2 * i] = address.depth();
+                captures[2 * i + 1] = address.slot();
+            }
+            return captures;
+        }
+    }
 }
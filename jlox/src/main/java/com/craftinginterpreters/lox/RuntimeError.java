@@ -11,4 +11,8 @@ public class RuntimeError extends RuntimeException {
     RuntimeError(Token token, String message) {
         this(token.line(), message);
     }
+
+    public int line() {
+        return line;
+    }
 }
@@ -1,137 +1,260 @@
 package com.craftinginterpreters.lox;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Arrays;
 import java.util.List;
-import java.util.Map;
 
 import static com.craftinginterpreters.lox.TokenType.*;
-import static java.util.Map.entry;
 
+// Produces tokens in batches from a Reader, buffering only the characters of the current batch,
+// so sources never have to be held in memory as a whole. Tokens are written into a TokenBuffer without allocating.
+// Characters are classified through a lookup table, and runs of them (whitespace, comments, names, digits)
+// are consumed by tight loops over the window rather than one advance() at a time.
 public class Scanner {
 
-    private static final Map<String, TokenType> KEYWORDS = Map.ofEntries(
-        entry("and", AND),
-        entry("class", CLASS),
-        entry("else", ELSE),
-        entry("false", FALSE),
-        entry("for", FOR),
-        entry("fun", FUN),
-        entry("if", IF),
-        entry("nil", NIL),
-        entry("or", OR),
-        entry("print", PRINT),
-        entry("return", RETURN),
-        entry("super", SUPER),
-        entry("this", THIS),
-        entry("true", TRUE),
-        entry("var", VAR),
-        entry("while", WHILE),
-        entry("break", BREAK),
-        entry("continue", CONTINUE)
-    );
-    private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private static final int BUFFER_SIZE = 8192;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    // Character classes of ASCII characters, other characters have none
+    private static final byte WHITESPACE = 1;
+    private static final byte DIGIT = 2;
+    private static final byte ALPHA = 4;
+    private static final byte[] CLASSES = new byte[128];
+    // Tokens made of a single character, whatever follows it
+    private static final TokenType[] SINGLE_CHARACTER_TOKENS = new TokenType[128];
+
+    static {
+        CLASSES[' '] = CLASSES['\t'] = CLASSES['\r'] = CLASSES['\n'] = WHITESPACE;
+        for (var c = '0'; c <= '9'; c++) {
+            CLASSES[c] = DIGIT;
+        }
+        for (var c = 'a'; c <= 'z'; c++) {
+            CLASSES[c] = ALPHA;
+            CLASSES[Character.toUpperCase(c)] = ALPHA;
+        }
+        CLASSES['_'] = ALPHA;
+
+        SINGLE_CHARACTER_TOKENS['('] = LEFT_PAREN;
+        SINGLE_CHARACTER_TOKENS[')'] = RIGHT_PAREN;
+        SINGLE_CHARACTER_TOKENS['{'] = LEFT_BRACE;
+        SINGLE_CHARACTER_TOKENS['}'] = RIGHT_BRACE;
+        SINGLE_CHARACTER_TOKENS['['] = LEFT_BRACKET;
+        SINGLE_CHARACTER_TOKENS[']'] = RIGHT_BRACKET;
+        SINGLE_CHARACTER_TOKENS[','] = COMMA;
+        SINGLE_CHARACTER_TOKENS['.'] = DOT;
+        SINGLE_CHARACTER_TOKENS['-'] = MINUS;
+        SINGLE_CHARACTER_TOKENS['+'] = PLUS;
+        SINGLE_CHARACTER_TOKENS[';'] = SEMICOLON;
+        SINGLE_CHARACTER_TOKENS[':'] = COLON;
+        SINGLE_CHARACTER_TOKENS['*'] = STAR;
+        SINGLE_CHARACTER_TOKENS['?'] = QUESTION_MARK;
+    }
+
+    private final Reader reader;
+    private final ErrorReporter reporter;
+    private final Interner names = new Interner();
+    // Window of the source, from the start of the current batch of tokens; it only grows for batches longer than it
+    private char[] buffer = new char[BUFFER_SIZE];
+    // Offset of buffer[0] in the source
+    private int bufferOffset = 0;
+    private int limit = 0;
+    private boolean readerExhausted = false;
     private int line = 1;
     private int start = 0;
     private int current = 0;
+    private TokenBuffer tokens;
+    // Start of the first token of the batch, -1 while there is none
+    private int batchStart = -1;
+    // Unexpected characters are reported once per line
+    private final List<Character> unexpectedCharacters = new ArrayList<>();
+    private int unexpectedCharactersLine;
+
+    Scanner(Reader reader, ErrorReporter reporter) {
+        this.reader = reader;
+        this.reporter = reporter;
+    }
 
-    public Scanner(String source) {
-        this.source = source;
+    Scanner(String source, ErrorReporter reporter) {
+        this(new StringReader(source), reporter);
     }
 
     public List<Token> scanTokens() {
-        var unexpectedCharacters = new LinkedHashMap<Integer, List<Character>>();
+        var tokens = new ArrayList<Token>();
+        var batch = new TokenBuffer();
+        do {
+            scan(batch);
+            for (var i = 0; i < batch.size(); i++) {
+                tokens.add(batch.token(i));
+            }
+        } while (tokens.getLast().type() != EOF);
+        return tokens;
+    }
 
-        while (!isAtEnd()) {
+    // Replaces the tokens of the batch with the next ones; the last batch ends with EOF.
+    // The previous tokens of the batch are not valid anymore, since the window they refer to moves on.
+    void scan(TokenBuffer batch) {
+        tokens = batch;
+        batch.size = 0;
+        batchStart = -1;
+        while (batch.size < TokenBuffer.CAPACITY) {
+            skipWhitespaceAndComments();
             // We are at the beginning of the next lexeme
             start = current;
-            var result = scanToken();
-            if (result.error) {
-                unexpectedCharacters.computeIfAbsent(line, k -> new ArrayList<>()).add(result.character);
+            if (isAtEnd()) {
+                reportUnexpectedCharacters();
+                addToken(EOF);
+                break;
             }
+            scanToken();
         }
+        batch.chars = buffer;
+        batch.charsOffset = bufferOffset;
+    }
 
-        unexpectedCharacters.forEach((line, unexpected) -> {
-            Lox.error(line, "Unexpected characters: " + unexpected);
-        });
+    private void unexpected(char c) {
+        if (!unexpectedCharacters.isEmpty() && unexpectedCharactersLine != line) {
+            reportUnexpectedCharacters();
+        }
+        unexpectedCharactersLine = line;
+        unexpectedCharacters.add(c);
+    }
 
-        tokens.add(new Token(EOF, "", null, line));
-        return tokens;
+    private void reportUnexpectedCharacters() {
+        if (!unexpectedCharacters.isEmpty()) {
+            reporter.error(unexpectedCharactersLine, "Unexpected characters: " + unexpectedCharacters);
+            unexpectedCharacters.clear();
+        }
     }
 
     private boolean isAtEnd() {
-        return current >= source.length();
+        return current >= limit && !fill();
     }
 
-    private ScanTokenResult scanToken() {
+    // Reads more characters, keeping those of the batch and of the current lexeme; false if there are none left
+    private boolean fill() {
+        if (readerExhausted) {
+            return false;
+        }
+        var keep = batchStart != -1 ? batchStart : start;
+        if (keep > 0) {
+            System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+            bufferOffset += keep;
+            limit -= keep;
+            current -= keep;
+            start -= keep;
+            if (batchStart != -1) {
+                batchStart -= keep;
+            }
+        } else if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+
+        try {
+            var read = reader.read(buffer, limit, buffer.length - limit);
+            if (read == -1) {
+                readerExhausted = true;
+                return false;
+            }
+            limit += read;
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void skipWhitespaceAndComments() {
+        while (true) {
+            if (current == limit) {
+                // Nothing skipped needs to stay in the window
+                start = current;
+                if (!fill()) {
+                    return;
+                }
+            }
+            var c = buffer[current];
+            if (c == '\n') {
+                line++;
+                current++;
+            } else if (is(c, WHITESPACE)) {
+                current++;
+            } else if (c == '/' && peekNext() == '/') {
+                singleLineComment();
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void scanToken() {
         var c = advance();
-        var error = false;
+        var single = c < 128 ? SINGLE_CHARACTER_TOKENS[c] : null;
+        if (single != null) {
+            addToken(single);
+            return;
+        }
         switch (c) {
-            case '(' -> addToken(LEFT_PAREN);
-            case ')' -> addToken(RIGHT_PAREN);
-            case '{' -> addToken(LEFT_BRACE);
-            case '}' -> addToken(RIGHT_BRACE);
-            case '[' -> addToken(LEFT_BRACKET);
-            case ']' -> addToken(RIGHT_BRACKET);
-            case ',' -> addToken(COMMA);
-            case '.' -> addToken(DOT);
-            case '-' -> addToken(MINUS);
-            case '+' -> addToken(PLUS);
-            case ';' -> addToken(SEMICOLON);
-            case ':' -> addToken(COLON);
-            case '*' -> addToken(STAR);
-            case '?' -> addToken(QUESTION_MARK);
             case '!' -> addToken(match('=') ? BANG_EQUAL : BANG);
             case '=' -> addToken(match('=') ? EQUAL_EQUAL : EQUAL);
             case '<' -> addToken(match('=') ? LESS_EQUAL : LESS);
             case '>' -> addToken(match('=') ? GREATER_EQUAL : GREATER);
             case '/' -> {
-                if (match('/')) {
-                    singleLineComment();
-                } else if (match('*')) {
-                    error = multiLineComment();
+                if (match('*')) {
+                    if (multiLineComment()) {
+                        unexpected(c);
+                    }
                 } else {
                     addToken(SLASH);
                 }
             }
-            case ' ', '\r', '\t' -> {
-                // Ignore whitespaces
-            }
-            case '\n' -> line++;
             case '"' -> string();
             default -> {
-                if (isDigit(c)) {
+                if (is(c, DIGIT)) {
                     number();
-                } else if (isAlpha(c)) {
+                } else if (is(c, ALPHA)) {
                     identifier();
                 } else {
-                    error = true;
+                    unexpected(c);
                 }
             }
         }
+    }
 
-        return new ScanTokenResult(c, error);
+    private static boolean is(char c, byte characterClass) {
+        return c < 128 && (CLASSES[c] & characterClass) != 0;
     }
 
     private char advance() {
-        return source.charAt(current++);
+        return buffer[current++];
     }
 
     private void addToken(TokenType type) {
         addToken(type, null);
     }
 
-    private void addToken(TokenType type, Object literal) {
-        var text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+    private void addToken(TokenType type, String name) {
+        var index = tokens.size++;
+        tokens.types[index] = type.ordinal();
+        tokens.starts[index] = bufferOffset + start;
+        tokens.lengths[index] = current - start;
+        tokens.lines[index] = line;
+        tokens.names[index] = name;
+        if (batchStart == -1) {
+            batchStart = start;
+        }
     }
 
     private boolean match(char expected) {
         if (isAtEnd()) {
             return false;
         }
-        if (source.charAt(current) != expected) {
+        if (buffer[current] != expected) {
             return false;
         }
         current++;
@@ -142,19 +265,34 @@ public class Scanner {
         if (isAtEnd()) {
             return '\0';
         }
-        return source.charAt(current);
+        return buffer[current];
+    }
+
+    private char peekNext() {
+        while (current + 1 >= limit) {
+            if (!fill()) {
+                return '\0';
+            }
+        }
+        return buffer[current + 1];
     }
 
     private void singleLineComment() {
         // A comment goes until the end of the line
-        while (peek() != '\n' && !isAtEnd()) {
-            advance();
-        }
+        do {
+            while (current < limit && buffer[current] != '\n') {
+                current++;
+            }
+            // Comments are not kept in the buffer
+            start = current;
+        } while (current == limit && fill());
     }
 
+    // True if the comment is not properly closed
     private boolean multiLineComment() {
         while (peek() != '*' && !isAtEnd()) {
             advance();
+            start = current;
             if (peek() == '\n') {
                 line++;
             }
@@ -172,74 +310,81 @@ public class Scanner {
     }
 
     private void string() {
-        while (peek() != '"' && !isAtEnd()) {
-            if (peek() == '\n') {
-                line++;
+        do {
+            while (current < limit && buffer[current] != '"') {
+                if (buffer[current] == '\n') {
+                    line++;
+                }
+                current++;
             }
-            advance();
-        }
+        } while (current == limit && fill());
 
         if (isAtEnd()) {
-            Lox.error(line, "Unterminated string.");
+            reporter.error(line, "Unterminated string.");
             return;
         }
 
         // The closing "
         advance();
-        // Trim the surrounding quotes
-        var value = source.substring(start + 1, current - 1);
-        addToken(STRING, value);
-    }
-
-    private boolean isDigit(char c) {
-        return c >= '0' && c <= '9';
-    }
-
-    private boolean isAlpha(char c) {
-        return (c >= 'a' && c <= 'z') ||
-               (c >= 'A' && c <= 'Z') ||
-               c == '_';
-    }
-
-    private boolean isAlphaNumeric(char c) {
-        return isAlpha(c) || isDigit(c);
+        addToken(STRING);
     }
 
     private void number() {
-        while (isDigit(peek())) {
-            advance();
-        }
+        skipDigits();
         // Look for a fractional part
-        if (peek() == '.' && isDigit(peekNext())) {
+        if (peek() == '.' && is(peekNext(), DIGIT)) {
             // Consume the "."
             advance();
-
-            while (isDigit(peek())) {
-                advance();
-            }
+            skipDigits();
         }
 
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+        addToken(NUMBER);
+        tokens.numbers[tokens.size - 1] = numberValue();
     }
 
-    private char peekNext() {
-        var next = current + 1;
-        if (next >= source.length()) {
-            return '\0';
-        }
-        return source.charAt(next);
+    private void skipDigits() {
+        do {
+            while (current < limit && is(buffer[current], DIGIT)) {
+                current++;
+            }
+        } while (current == limit && fill());
     }
 
-    private void identifier() {
-        while (isAlphaNumeric(peek())) {
-            advance();
+    // Exact as long as the digits fit in a double mantissa and the scale is an exact power of ten,
+    // which covers nearly all literals without creating a String for Double.parseDouble
+    private double numberValue() {
+        var digits = 0L;
+        var scale = 0;
+        var fraction = false;
+        for (var i = start; i < current; i++) {
+            var c = buffer[i];
+            if (c == '.') {
+                fraction = true;
+            } else {
+                digits = digits * 10 + (c - '0');
+                if (fraction) {
+                    scale++;
+                }
+                if (digits >= 1L << 53 || scale >= POWERS_OF_TEN.length) {
+                    return Double.parseDouble(new String(buffer, start, current - start));
+                }
+            }
         }
-        var text = source.substring(start, current);
-        var type = KEYWORDS.getOrDefault(text, IDENTIFIER);
-
-        addToken(type);
+        return digits / POWERS_OF_TEN[scale];
     }
 
-    private record ScanTokenResult(char character, boolean error) {
+    private void identifier() {
+        do {
+            while (current < limit && is(buffer[current], (byte) (ALPHA | DIGIT))) {
+                current++;
+            }
+        } while (current == limit && fill());
+
+        var keyword = Keywords.find(buffer, start, current - start);
+        if (keyword != -1) {
+            addToken(Keywords.type(keyword), Keywords.name(keyword));
+        } else {
+            addToken(IDENTIFIER, names.intern(buffer, start, current - start));
+        }
     }
 }
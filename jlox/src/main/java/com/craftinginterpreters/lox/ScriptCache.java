@@ -0,0 +1,94 @@
+package com.craftinginterpreters.lox;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Optional;
+
+// On-disk cache of resolved scripts, so running an unchanged script again skips scanning, parsing and resolving.
+// Entries are keyed by a hash of the source and of the interpreter version, and loaded through a memory mapping.
+// The cache is best effort: unreadable or stale entries are ignored, and failures to write them too.
+class ScriptCache {
+
+    private final Path directory;
+
+    ScriptCache(Path directory) {
+        this.directory = directory;
+    }
+
+    // LOX_CACHE_DIR, or jlox under XDG_CACHE_HOME or ~/.cache; LOX_CACHE=false disables the cache
+    static Optional<ScriptCache> fromEnvironment() {
+        if (!Boolean.parseBoolean(Lox.getEnvOrDefault("LOX_CACHE", "true"))) {
+            return Optional.empty();
+        }
+        var directory = Optional.ofNullable(System.getenv("LOX_CACHE_DIR"))
+            .map(Path::of)
+            .orElseGet(() -> Optional.ofNullable(System.getenv("XDG_CACHE_HOME"))
+                .map(Path::of)
+                .orElseGet(() -> Path.of(System.getProperty("user.home"), ".cache"))
+                .resolve("jlox"));
+        return Optional.of(new ScriptCache(directory));
+    }
+
+    // Empty if the source file can't be read
+    Optional<Entry> entry(Path sourceFile) {
+        try (var in = Files.newInputStream(sourceFile)) {
+            var digest = MessageDigest.getInstance("SHA-256");
+            digest.update(version().getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            var chunk = new byte[8192];
+            for (var read = in.read(chunk); read != -1; read = in.read(chunk)) {
+                digest.update(chunk, 0, read);
+            }
+            return Optional.of(new Entry(directory.resolve(HexFormat.of().formatHex(digest.digest()) + ".ast")));
+        } catch (IOException e) {
+            return Optional.empty();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String version() {
+        var implementationVersion = Optional.ofNullable(Lox.class.getPackage().getImplementationVersion()).orElse("dev");
+        return implementationVersion + "/" + AstWriter.FORMAT_VERSION;
+    }
+
+    // Cached script of a given source, its key computed once so what gets stored matches what was looked up
+    record Entry(Path path) {
+
+        Optional<CompiledScript> load() {
+            if (!Files.isRegularFile(path)) {
+                return Optional.empty();
+            }
+            try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                var buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                return Optional.of(new CompiledScript(new AstReader(buffer).read()));
+            } catch (IOException | RuntimeException e) {
+                return Optional.empty();
+            }
+        }
+
+        void store(CompiledScript script) {
+            try {
+                Files.createDirectories(path.getParent());
+                // Written aside and moved, so concurrent runs never read a partial entry
+                var temporary = Files.createTempFile(path.getParent(), path.getFileName().toString(), ".tmp");
+                try {
+                    Files.write(temporary, new AstWriter().write(script.statements()));
+                    Files.move(temporary, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(temporary);
+                }
+            } catch (IOException e) {
+                // Running the script doesn't depend on the cache
+            }
+        }
+    }
+}
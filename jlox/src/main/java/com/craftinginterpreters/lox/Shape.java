@@ -0,0 +1,42 @@
+package com.craftinginterpreters.lox;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Layout of instance fields, mapping each field name to its slot in the instance values.
+// Instances of a class that got the same fields in the same order share one Shape, reached through transitions
+// from the class root shape, so inline caches can key on it.
+final class Shape {
+
+    final LoxClass klass;
+    private final Map<String, Integer> slots;
+    private final Map<String, Shape> transitions = new ConcurrentHashMap<>();
+
+    Shape(LoxClass klass) {
+        this(klass, Map.of());
+    }
+
+    private Shape(LoxClass klass, Map<String, Integer> slots) {
+        this.klass = klass;
+        this.slots = slots;
+    }
+
+    int size() {
+        return slots.size();
+    }
+
+    // -1 if there is no such field
+    int slotOf(String name) {
+        return slots.getOrDefault(name, -1);
+    }
+
+    // Shape with the field added in the next slot
+    Shape withField(String name) {
+        return transitions.computeIfAbsent(name, n -> {
+            var newSlots = new HashMap<>(slots);
+            newSlots.put(n, slots.size());
+            return new Shape(klass, newSlots);
+        });
+    }
+}
@@ -33,6 +33,8 @@ abstract class Stmt {
 
     static class Block extends Stmt {
         final List<Stmt> statements;
+        int localCount;
+        boolean flattened;
 
         Block(List<Stmt> statements) {
             this.statements = statements;
@@ -47,6 +49,7 @@ abstract class Stmt {
     static class Class extends Stmt {
         final Token name;
         final List<Stmt.Function> methods;
+        int slot = -1;
 
         Class(Token name, List<Stmt.Function> methods) {
             this.name = name;
@@ -76,6 +79,9 @@ abstract class Stmt {
         final Token name;
         final List<Token> params;
         final List<Stmt> body;
+        int slot = -1;
+        int localCount;
+        int[] captures = {};
 
         Function(Token name, List<Token> params, List<Stmt> body) {
             this.name = name;
@@ -137,6 +143,7 @@ abstract class Stmt {
     static class Variable extends Stmt {
         final Token name;
         final Expr initializer;
+        int slot = -1;
 
         Variable(Token name, Expr initializer) {
             this.name = name;
@@ -153,6 +160,7 @@ abstract class Stmt {
         final Expr condition;
         final Stmt body;
         final Stmt forLoopStep;
+        CountedLoop countedLoop;
 
         While(Expr condition, Stmt body, Stmt forLoopStep) {
             this.condition = condition;
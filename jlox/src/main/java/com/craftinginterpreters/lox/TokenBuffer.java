@@ -0,0 +1,103 @@
+package com.craftinginterpreters.lox;
+
+import java.util.Arrays;
+
+// A batch of scanned tokens, kept in parallel arrays over the scanner window rather than as Token objects.
+// Lexemes and literals are only created when asked for, except names (identifiers and keywords), which are interned.
+final class TokenBuffer {
+
+    static final int CAPACITY = 1024;
+    private static final TokenType[] TYPES = TokenType.values();
+
+    int[] types;
+    // Offsets in the whole source
+    int[] starts;
+    int[] lengths;
+    int[] lines;
+    double[] numbers;
+    String[] names;
+    int size = 0;
+    // Scanner window holding the characters of all the tokens, chars[0] being at charsOffset in the source
+    char[] chars;
+    int charsOffset;
+
+    TokenBuffer() {
+        this(CAPACITY);
+    }
+
+    TokenBuffer(int capacity) {
+        types = new int[capacity];
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        lines = new int[capacity];
+        numbers = new double[capacity];
+        names = new String[capacity];
+    }
+
+    // Appends the tokens of a batch; they must refer to the chars of this buffer, the whole source typically
+    void addAll(TokenBuffer batch) {
+        addRange(batch, 0, batch.size);
+    }
+
+    // Copy of the tokens from index from to index to (excluded), ended by an EOF where the token at index to starts
+    TokenBuffer slice(int from, int to) {
+        var slice = new TokenBuffer(to - from + 1);
+        slice.addRange(this, from, to + 1);
+        slice.types[slice.size - 1] = TokenType.EOF.ordinal();
+        slice.lengths[slice.size - 1] = 0;
+        slice.names[slice.size - 1] = null;
+        slice.chars = chars;
+        slice.charsOffset = charsOffset;
+        return slice;
+    }
+
+    private void addRange(TokenBuffer other, int from, int to) {
+        var count = to - from;
+        if (size + count > types.length) {
+            var capacity = Math.max(size + count, types.length * 2);
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            numbers = Arrays.copyOf(numbers, capacity);
+            names = Arrays.copyOf(names, capacity);
+        }
+        System.arraycopy(other.types, from, types, size, count);
+        System.arraycopy(other.starts, from, starts, size, count);
+        System.arraycopy(other.lengths, from, lengths, size, count);
+        System.arraycopy(other.lines, from, lines, size, count);
+        System.arraycopy(other.numbers, from, numbers, size, count);
+        System.arraycopy(other.names, from, names, size, count);
+        size += count;
+    }
+
+    int size() {
+        return size;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    String lexeme(int index) {
+        var name = names[index];
+        return name != null ? name : new String(chars, starts[index] - charsOffset, lengths[index]);
+    }
+
+    Object literal(int index) {
+        return switch (type(index)) {
+            case NUMBER -> numbers[index];
+            // Without the surrounding quotes
+            case STRING -> new String(chars, starts[index] - charsOffset + 1, lengths[index] - 2);
+            default -> null;
+        };
+    }
+
+    Token token(int index) {
+        return new Token(type(index), lexeme(index), literal(index), line(index));
+    }
+}
@@ -0,0 +1,343 @@
+package com.craftinginterpreters.lox;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static com.craftinginterpreters.lox.Interpreter.isEqual;
+import static com.craftinginterpreters.lox.Interpreter.isTruthy;
+import static com.craftinginterpreters.lox.Interpreter.stringify;
+
+// Stack based alternative to the tree-walking Interpreter, executing Chunks produced by the BytecodeCompiler.
+// Shares globals (and natives) with the given Interpreter, which stays the reference implementation.
+public class VM {
+
+    private final Interpreter interpreter;
+    private final Environment globals;
+    private final PrintStream out;
+    // Functions this VM runs, and makes: its own, or those of the VM it is a worker of
+    private final VM home;
+    private final ParallelList.Owner owner;
+    private Object[] stack = new Object[256];
+    private int sp = 0;
+
+    public VM(Interpreter interpreter) {
+        this(interpreter, null);
+    }
+
+    private VM(Interpreter interpreter, VM home) {
+        this.interpreter = interpreter;
+        this.globals = interpreter.globals();
+        this.out = interpreter.out();
+        this.home = home == null ? this : home;
+        this.owner = interpreter.owner();
+    }
+
+    // VM running the functions of this one for a worker Interpreter (see Interpreter.worker()), on the worker's thread.
+    // Functions made by workers belong to this VM, so that they run here once returned.
+    VM worker(Interpreter worker) {
+        return new VM(worker, home);
+    }
+
+    // False if it stopped on a runtime error, which was given to the error reporter of the Interpreter
+    public boolean execute(CompiledScript script) {
+        return interpret(script.statements());
+    }
+
+    boolean interpret(List<Stmt> statements) {
+        try {
+            var chunk = new BytecodeCompiler().compile(statements);
+            sp = 0;
+            run(chunk, globals);
+            return true;
+        } catch (RuntimeError error) {
+            interpreter.reporter().runtimeError(error);
+            return false;
+        }
+    }
+
+    boolean interpretPrinting(Stmt statement) {
+        var statementToExecute = statement instanceof Stmt.Expression expr ? new Stmt.Print(expr.expression) : statement;
+        return interpret(List.of(statementToExecute));
+    }
+
+    Object call(VmFunction function, List<Object> arguments) {
+        var environment = new Environment(function.closure, function.chunk.localCount());
+        for (var i = 0; i < arguments.size(); i++) {
+            environment.define(i, arguments.get(i));
+        }
+        return invoke(function, environment);
+    }
+
+    private Object invoke(VmFunction function, Environment environment) {
+        var result = run(function.chunk, environment);
+        return function.chunk.initializer() ? function.thisFromClosure() : result;
+    }
+
+    private Object run(Chunk chunk, Environment environment) {
+        var code = chunk.code();
+        var lines = chunk.lines();
+        var constants = chunk.constants();
+        ensureStackCapacity(chunk.maxStack());
+        var stack = this.stack;
+        var base = this.sp;
+        var sp = base;
+        var ip = 0;
+
+        while (true) {
+            var start = ip;
+            switch (code[ip++]) {
+                case OpCode.CONSTANT -> stack[sp++] = constants[code[ip++]];
+                case OpCode.NIL -> stack[sp++] = null;
+                case OpCode.TRUE -> stack[sp++] = true;
+                case OpCode.FALSE -> stack[sp++] = false;
+                case OpCode.POP -> sp--;
+                case OpCode.GET_LOCAL -> {
+                    stack[sp++] = environment.getAt(code[ip], code[ip + 1]);
+                    ip += 2;
+                }
+                case OpCode.SET_LOCAL -> {
+                    if (!environment.assignAt(code[ip], code[ip + 1], stack[sp - 1], owner)) {
+                        throw Interpreter.readOnlyVariableError((Token) constants[code[ip + 2]]);
+                    }
+                    ip += 3;
+                }
+                case OpCode.DEFINE_LOCAL -> environment.define(code[ip++], stack[--sp]);
+                case OpCode.GET_GLOBAL -> stack[sp++] = globals.get((Token) constants[code[ip++]]);
+                case OpCode.SET_GLOBAL -> globals.assign((Token) constants[code[ip++]], stack[sp - 1]);
+                case OpCode.DEFINE_GLOBAL -> globals.define((String) constants[code[ip++]], stack[--sp]);
+                case OpCode.GET_PROPERTY -> {
+                    var site = (Expr.Get) constants[code[ip++]];
+                    if (!(stack[sp - 1] instanceof LoxInstance instance)) {
+                        throw new RuntimeError(site.name, "Only instances have properties");
+                    }
+                    stack[sp - 1] = PropertyCache.get(site, instance);
+                }
+                case OpCode.CHECK_INSTANCE -> {
+                    var name = (Token) constants[code[ip++]];
+                    if (!(stack[sp - 1] instanceof LoxInstance)) {
+                        throw new RuntimeError(name, "Only instances have fields");
+                    }
+                }
+                case OpCode.SET_PROPERTY -> {
+                    var site = (Expr.Set) constants[code[ip++]];
+                    var value = stack[--sp];
+                    var instance = (LoxInstance) stack[sp - 1];
+                    if (!ParallelList.Owner.canWrite(owner, instance.owner)) {
+                        throw Interpreter.notOwnedInstanceError(site.name);
+                    }
+                    PropertyCache.set(site, instance, value);
+                    stack[sp - 1] = value;
+                }
+                case OpCode.EQUAL -> {
+                    sp--;
+                    stack[sp - 1] = isEqual(stack[sp - 1], stack[sp]);
+                }
+                case OpCode.NOT_EQUAL -> {
+                    sp--;
+                    stack[sp - 1] = !isEqual(stack[sp - 1], stack[sp]);
+                }
+                case OpCode.GREATER -> {
+                    sp--;
+                    stack[sp - 1] = number(stack[sp - 1], lines[start]) > number(stack[sp], lines[start]);
+                }
+                case OpCode.GREATER_EQUAL -> {
+                    sp--;
+                    stack[sp - 1] = number(stack[sp - 1], lines[start]) >= number(stack[sp], lines[start]);
+                }
+                case OpCode.LESS -> {
+                    sp--;
+                    stack[sp - 1] = number(stack[sp - 1], lines[start]) < number(stack[sp], lines[start]);
+                }
+                case OpCode.LESS_EQUAL -> {
+                    sp--;
+                    stack[sp - 1] = number(stack[sp - 1], lines[start]) <= number(stack[sp], lines[start]);
+                }
+                case OpCode.ADD -> {
+                    sp--;
+                    stack[sp - 1] = add(stack[sp - 1], stack[sp], lines[start]);
+                }
+                case OpCode.SUBTRACT -> {
+                    sp--;
+                    stack[sp - 1] = DoubleCache.valueOf(number(stack[sp - 1], lines[start]) - number(stack[sp], lines[start]));
+                }
+                case OpCode.MULTIPLY -> {
+                    sp--;
+                    stack[sp - 1] = DoubleCache.valueOf(number(stack[sp - 1], lines[start]) * number(stack[sp], lines[start]));
+                }
+                case OpCode.DIVIDE -> {
+                    sp--;
+                    var left = number(stack[sp - 1], lines[start]);
+                    var right = number(stack[sp], lines[start]);
+                    if (right == 0) {
+                        throw new RuntimeError(lines[start], "Division by zero");
+                    }
+                    stack[sp - 1] = DoubleCache.valueOf(left / right);
+                }
+                case OpCode.NEGATE -> {
+                    if (!(stack[sp - 1] instanceof Double d)) {
+                        throw new RuntimeError(lines[start], "Operand must be a number");
+                    }
+                    stack[sp - 1] = DoubleCache.valueOf(-d);
+                }
+                case OpCode.NOT -> stack[sp - 1] = !isTruthy(stack[sp - 1]);
+                case OpCode.JUMP -> ip = code[ip];
+                case OpCode.JUMP_IF_FALSE -> ip = isTruthy(stack[--sp]) ? ip + 1 : code[ip];
+                case OpCode.JUMP_IF_TRUE_OR_POP -> {
+                    if (isTruthy(stack[sp - 1])) {
+                        ip = code[ip];
+                    } else {
+                        sp--;
+                        ip++;
+                    }
+                }
+                case OpCode.JUMP_IF_FALSE_OR_POP -> {
+                    if (!isTruthy(stack[sp - 1])) {
+                        ip = code[ip];
+                    } else {
+                        sp--;
+                        ip++;
+                    }
+                }
+                case OpCode.TERNARY_JUMP -> {
+                    var selector = stack[--sp];
+                    if (!(selector instanceof Boolean selectorValue)) {
+                        throw new RuntimeError(lines[start],
+                            "Ternary selector must evaluate to boolean value but was: " + selector);
+                    }
+                    ip = selectorValue ? ip + 1 : code[ip];
+                }
+                case OpCode.CALL -> {
+                    var argumentsCount = code[ip++];
+                    var result = callValue(stack, sp, argumentsCount, lines[start]);
+                    sp -= argumentsCount;
+                    // Called functions might have grown the stack
+                    stack = this.stack;
+                    stack[sp - 1] = result;
+                }
+                case OpCode.TAIL_CALL -> {
+                    var argumentsCount = code[ip++];
+                    // What follows in this function only returns the result, so the callee can run in its place,
+                    // unless it is an initializer, whose result is not the one returned
+                    if (stack[sp - argumentsCount - 1] instanceof VmFunction function && function.vm == home
+                        && !function.chunk.initializer()) {
+                        checkArity(function.arity(), argumentsCount, lines[start]);
+                        environment = frame(function, stack, sp, argumentsCount);
+                        chunk = function.chunk;
+                        code = chunk.code();
+                        lines = chunk.lines();
+                        constants = chunk.constants();
+                        sp = base;
+                        this.sp = sp;
+                        ensureStackCapacity(chunk.maxStack());
+                        stack = this.stack;
+                        ip = 0;
+                    } else {
+                        var result = callValue(stack, sp, argumentsCount, lines[start]);
+                        sp -= argumentsCount;
+                        stack = this.stack;
+                        stack[sp - 1] = result;
+                    }
+                }
+                case OpCode.CLOSURE -> {
+                    var function = (Chunk) constants[code[ip++]];
+                    stack[sp++] = new VmFunction(home, function, environment.capture(function.captures(), owner));
+                }
+                case OpCode.CLASS -> {
+                    var name = (String) constants[code[ip++]];
+                    var methodsCount = code[ip++];
+                    var methods = new HashMap<String, VmFunction>();
+                    for (var i = sp - methodsCount; i < sp; i++) {
+                        var method = (VmFunction) stack[i];
+                        methods.put(method.chunk.name(), method);
+                    }
+                    sp -= methodsCount;
+                    stack[sp++] = new LoxClass(name, methods);
+                }
+                case OpCode.LIST -> {
+                    var elementsCount = code[ip++];
+                    var elements = Arrays.asList(Arrays.copyOfRange(stack, sp - elementsCount, sp));
+                    sp -= elementsCount;
+                    stack[sp++] = new LoxList(elements, owner);
+                }
+                case OpCode.PRINT -> out.println(stringify(stack[--sp]));
+                case OpCode.PUSH_SCOPE -> environment = new Environment(environment, code[ip++]);
+                case OpCode.POP_SCOPE -> environment = environment.ancestor(1);
+                case OpCode.RETURN -> {
+                    return stack[--sp];
+                }
+                default -> throw new IllegalStateException("Unknown opcode: " + code[start]);
+            }
+        }
+    }
+
+    // Callee is below its arguments on the stack, at sp - argumentsCount - 1
+    private Object callValue(Object[] stack, int sp, int argumentsCount, int line) {
+        var callee = stack[sp - argumentsCount - 1];
+
+        if (callee instanceof VmFunction function && function.vm == home) {
+            checkArity(function.arity(), argumentsCount, line);
+            var environment = frame(function, stack, sp, argumentsCount);
+            this.sp = sp - argumentsCount - 1;
+            return invoke(function, environment);
+        }
+
+        if (callee instanceof LoxCallable function) {
+            var arguments = Arrays.asList(Arrays.copyOfRange(stack, sp - argumentsCount, sp));
+            checkArity(function.arity(), argumentsCount, line);
+            this.sp = sp - argumentsCount - 1;
+            try {
+                return function.call(interpreter, arguments);
+            } catch (NativeError error) {
+                throw new RuntimeError(line, error.getMessage());
+            }
+        }
+
+        throw new RuntimeError(line, "Can only call functions and classes");
+    }
+
+    // Environment of a call, with the arguments on top of the stack
+    private static Environment frame(VmFunction function, Object[] stack, int sp, int argumentsCount) {
+        var environment = new Environment(function.closure, function.chunk.localCount());
+        for (var i = 0; i < argumentsCount; i++) {
+            environment.define(i, stack[sp - argumentsCount + i]);
+        }
+        return environment;
+    }
+
+    private void checkArity(int arity, int argumentsCount, int line) {
+        if (argumentsCount != arity) {
+            throw new RuntimeError(line, "Expected %d arguments but got %d".formatted(arity, argumentsCount));
+        }
+    }
+
+    private void ensureStackCapacity(int needed) {
+        if (sp + needed > stack.length) {
+            stack = Arrays.copyOf(stack, Math.max(stack.length * 2, sp + needed));
+        }
+    }
+
+    private static double number(Object value, int line) {
+        if (value instanceof Double d) {
+            return d;
+        }
+        throw new RuntimeError(line, "Operands must be numbers");
+    }
+
+    private static Object add(Object left, Object right, int line) {
+        if (left instanceof Double dLeft && right instanceof Double dRight) {
+            return DoubleCache.valueOf(dLeft + dRight);
+        }
+        if (left instanceof String sLeft && right instanceof String sRight) {
+            return sLeft + sRight;
+        }
+        if (left instanceof String sLeft) {
+            return sLeft + stringify(right);
+        }
+        if (right instanceof String sRight) {
+            return stringify(left) + sRight;
+        }
+        throw new RuntimeError(line, "Operands must be two numbers or at least one string");
+    }
+}
@@ -0,0 +1,43 @@
+package com.craftinginterpreters.lox;
+
+import java.util.List;
+
+public class VmFunction implements LoxMethod {
+
+    final VM vm;
+    final Chunk chunk;
+    final Environment closure;
+
+    VmFunction(VM vm, Chunk chunk, Environment closure) {
+        this.vm = vm;
+        this.chunk = chunk;
+        this.closure = closure;
+    }
+
+    @Override
+    public int arity() {
+        return chunk.arity();
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return interpreter.vm(vm).call(this, arguments);
+    }
+
+    Object thisFromClosure() {
+        return closure.getAt(0, 0);
+    }
+
+    @Override
+    public VmFunction bind(LoxInstance instance) {
+        // Matches the scope with 'this' that the Resolver creates for every class
+        var environment = new Environment(closure, 1);
+        environment.define(0, instance);
+        return new VmFunction(vm, chunk, environment);
+    }
+
+    @Override
+    public String toString() {
+        return "<fn %s>".formatted(chunk.name());
+    }
+}
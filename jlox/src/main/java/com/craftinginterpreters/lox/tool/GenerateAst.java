@@ -13,31 +13,31 @@ public class GenerateAst {
     public static void main(String[] args) throws IOException {
         var outputDir = args.length < 1 ? ROOT_PACKAGE_PATH : args[0];
         defineAst(outputDir, "Expr", List.of(
-            "Assignment : Token name, Expr value",
+            "Assignment : Token name, Expr value | int depth = -1, int slot = -1",
             "Binary     : Expr left, Token operator, Expr right",
-            "Call       : Expr callee, Token paren, List<Expr> arguments",
-            "Get        : Expr object, Token name",
+            "Call       : Expr callee, Token paren, List<Expr> arguments | boolean tailCall, int calls, Inliner.InlinedCall inlined",
+            "Get        : Expr object, Token name | PropertyCache cache = PropertyCache.EMPTY",
             "Ternary    : Expr selector, Expr left, Expr right, int selectorLine",
             "Grouping   : Expr expression",
             "Literal    : Object value",
             "Logical    : Expr left, Token operator, Expr right",
-            "Set        : Expr object, Token name, Expr value",
-            "This       : Token keyword",
+            "Set        : Expr object, Token name, Expr value | PropertyCache cache = PropertyCache.EMPTY",
+            "This       : Token keyword | int depth = -1, int slot = -1",
             "Unary      : Token operator, Expr right",
-            "Variable   : Token name",
-            "Function   : List<Token> params, List<Stmt> body",
+            "Variable   : Token name | int depth = -1, int slot = -1",
+            "Function   : List<Token> params, List<Stmt> body | int localCount, int[] captures = {}",
             "LoxList    : List<Expr> elements"
         ));
         defineAst(outputDir, "Stmt", List.of(
-            "Block      : List<Stmt> statements",
-            "Class      : Token name, List<Stmt.Function> methods",
+            "Block      : List<Stmt> statements | int localCount, boolean flattened",
+            "Class      : Token name, List<Stmt.Function> methods | int slot = -1",
             "Expression : Expr expression",
-            "Function   : Token name, List<Token> params, List<Stmt> body",
+            "Function   : Token name, List<Token> params, List<Stmt> body | int slot = -1, int localCount, int[] captures = {}",
             "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
             "Print      : Expr expression",
             "Return     : Token keyword, Expr value",
-            "Variable   : Token name, Expr initializer",
-            "While      : Expr condition, Stmt body, Stmt forLoopStep",
+            "Variable   : Token name, Expr initializer | int slot = -1",
+            "While      : Expr condition, Stmt body, Stmt forLoopStep | CountedLoop countedLoop",
             "Break      : Expr loopCondition, Token keyword",
             "Continue   : Expr loopCondition, Token keyword"
         ));
@@ -70,13 +70,21 @@ public class GenerateAst {
         writer.close();
     }
 
-    private static void defineType(PrintWriter writer, String baseName, String className, String fieldList) {
+    // Fields after "|" are not part of the constructor, they are filled in later (by the Resolver, for example)
+    private static void defineType(PrintWriter writer, String baseName, String className, String fieldsSpec) {
         writer.println("    static class %s extends %s {".formatted(className, baseName));
+        var fieldsAndMutableFields = fieldsSpec.split("\\|");
+        var fieldList = fieldsAndMutableFields[0].trim();
         // Fields
         var fields = fieldList.split(", ");
         for (var f : fields) {
             writer.println("        final %s;".formatted(f));
         }
+        if (fieldsAndMutableFields.length > 1) {
+            for (var f : fieldsAndMutableFields[1].trim().split(", ")) {
+                writer.println("        %s;".formatted(f));
+            }
+        }
         writer.println();
         // Constructor
         writer.println("        %s(%s) {".formatted(className, fieldList));